@@ -0,0 +1,64 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks
+ *
+ * benchmarks.jar 的入口：参数交给 JMH，默认加上 GC profiler，
+ * 吞吐量后面跟着每秒、每次操作分配的内存。
+ * 基准测试在 app 包里，这样能直接用包内可见的 Scanner、Parser 和 Interpreter。
+ * workload 是 bench/ 下的脚本名，打包的时候放在 classpath 的根上。
+ */
+public final class Benchmarks {
+    static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private Benchmarks() {
+    }
+
+    static String source(String workload) {
+        try (InputStream in = Benchmarks.class.getResourceAsStream("/" + workload + ".lox")) {
+            if (in == null) {
+                throw new IllegalArgumentException("No workload " + workload + ".lox");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<Stmt> parse(String source) {
+        // 和 MyLox 一样解析、计算局部变量的位置，有错误就不测
+        ErrorReporter errors = new ErrorReporter(null);
+        Lexer lexer = new Scanner(source);
+        lexer.errors = errors;
+        List<Stmt> statements = new Parser(lexer.tokens()).parse();
+        Resolver resolver = new Resolver();
+        resolver.errors = errors;
+        resolver.resolve(statements);
+        if (errors.hadError()) {
+            throw new IllegalArgumentException(String.join("\n", errors.messages()));
+        }
+        return statements;
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,44 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * InterpreterBenchmark
+ *
+ * 只测树遍历解释器：语法树在 Setup 里解析好，每次用新的 Interpreter 执行，输出丢掉
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({ "fib", "loop", "closure", "strings", "tail" })
+    public String workload;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setup() {
+        statements = Benchmarks.parse(Benchmarks.source(workload));
+    }
+
+    @Benchmark
+    public void interpret() {
+        new Interpreter(Benchmarks.DISCARD).interpret(statements);
+    }
+}
@@ -0,0 +1,45 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParserBenchmark
+ *
+ * 扫描加解析。Parser 需要 token 的时候才去扫描，分不开，
+ * 减去 ScannerBenchmark 的时间就是 Parser 自己的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({ "fib", "loop", "closure", "strings", "tail" })
+    public String workload;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Benchmarks.source(workload);
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(new Scanner(source).tokens()).parse();
+    }
+}
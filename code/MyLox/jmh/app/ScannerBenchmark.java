@@ -0,0 +1,49 @@
+package app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ScannerBenchmark
+ *
+ * 只做词法分析：Scanner 没有一次扫完的方法，和 Parser 一样边取 token 边释放，直到 EOF
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({ "fib", "loop", "closure", "strings", "tail" })
+    public String workload;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Benchmarks.source(workload);
+    }
+
+    @Benchmark
+    public int scan() {
+        TokenBuffer tokens = new Scanner(source).tokens();
+        int count = 0;
+        while (tokens.type(count) != TokenType.EOF) {
+            count++;
+            tokens.release(count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,524 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AstCache
+ *
+ * 把解析好的语法树存成源文件旁边的 .loxc，下次源码没变就直接把树读回来，
+ * 不用再扫描、解析。文件的格式：
+ *
+ *   "LOXC" 版本 源码的 SHA-256
+ *   字符串池：个数，每个是长度加 UTF-8 字节
+ *   语句：个数，每个节点是一个字节的种类，后面跟着字段
+ *
+ * 整数都是变长的，一个字节存 7 位；Token 是种类、lexeme 在池里的下标和行号，
+ * 行号存的是和前一个 Token 的差。小的非负整数常量按变长整数存，其他的存 8 个字节。
+ * 读的时候把文件映射到内存，直接在上面重建语法树。
+ * 缓存文件可能被截断、写坏或者被别人改过：读到的个数先和剩下的字节数比，不会按坏的个数分配内存；
+ * 嵌套超过 MAX_DEPTH 层就不读了；读的时候出的任何 RuntimeException 都当作没有缓存，重新解析。
+ */
+final class AstCache {
+    static final int MAGIC = 0x4C4F5843;
+    static final int VERSION = 1;
+
+    // 节点的种类，NULL 表示没有（比如没有 else 的 if）
+    static final byte NULL = 0;
+    static final byte ASSIGN = 1;
+    static final byte LOGICAL = 2;
+    static final byte BINARY = 3;
+    static final byte GROUPING = 4;
+    static final byte NUMBER = 5;
+    static final byte STRING = 6;
+    static final byte TRUE = 7;
+    static final byte FALSE = 8;
+    static final byte NIL = 9;
+    static final byte UNARY = 10;
+    static final byte CALL = 11;
+    static final byte VARIABLE = 12;
+    static final byte INTEGER = 13;
+    static final byte BLOCK = 16;
+    static final byte IF = 17;
+    static final byte WHILE = 18;
+    static final byte EXPRESSION = 19;
+    static final byte PRINT = 20;
+    static final byte FUNCTION = 21;
+    static final byte RETURN = 22;
+    static final byte VAR = 23;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    // 读一层节点用一个 Java 栈帧，比这更深的树不从缓存读，重新解析
+    private static final int MAX_DEPTH = 2000;
+
+    private final ByteBuffer in;
+    private final String[] strings;
+    private int line = 0;
+    private int depth = 0;
+
+    private AstCache(ByteBuffer in, String[] strings) {
+        this.in = in;
+        this.strings = strings;
+    }
+
+    static Path pathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + "c");
+    }
+
+    static List<Stmt> load(Path cache, byte[] source) throws IOException {
+        // 没有缓存、源码变了或者文件不对都返回 null，重新解析
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            byte[] hash = new byte[32];
+            in.get(hash);
+            if (!Arrays.equals(hash, hash(source))) {
+                return null;
+            }
+            // 每个字符串至少有一个字节的长度
+            String[] strings = new String[readCount(in, 1)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readCount(in, 1)];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new AstCache(in, strings).statements();
+        } catch (RuntimeException e) {
+            // 截断的、写坏的文件：BufferUnderflowException、下标越界、不认识的种类等等
+            return null;
+        }
+    }
+
+    static void store(Path cache, byte[] source, List<Stmt> statements) throws IOException {
+        // 先写临时文件再换过去，同时运行的其他进程不会读到写了一半的缓存
+        AstWriter writer = new AstWriter();
+        writer.statements(statements);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(MAGIC).putInt(VERSION);
+        out.write(header.array());
+        out.write(hash(source));
+        writeInt(out, writer.strings.size());
+        for (String string : writer.strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(out, bytes.length);
+            out.write(bytes);
+        }
+        writer.body.writeTo(out);
+
+        Path temporary = cache.resolveSibling(cache.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            Files.write(temporary, out.toByteArray());
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            // 每个 Java 平台都必须有 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static int readInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            if (shift > 28) {
+                throw new IllegalArgumentException("Varint too long");
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int readCount(ByteBuffer in, int size) {
+        // 后面跟着 count 个至少 size 字节的东西，剩下的字节不够就是坏文件
+        int count = readInt(in);
+        if (count < 0 || count > in.remaining() / size) {
+            throw new IllegalArgumentException("Bad count " + count);
+        }
+        return count;
+    }
+
+    static void writeInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private List<Stmt> statements() {
+        int count = readCount(in, 1);
+        List<Stmt> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(statement());
+        }
+        return statements;
+    }
+
+    private Token token() {
+        TokenType type = TYPES[in.get()];
+        String lexeme = strings[readInt(in)];
+        int delta = readInt(in);
+        line += (delta >>> 1) ^ -(delta & 1);
+        // 和 TokenBuffer.literal 一样由 lexeme 得到
+        Object literal = type == TokenType.NUMBER ? (Object) Double.parseDouble(lexeme)
+                : type == TokenType.STRING ? lexeme : null;
+        return new Token(type, lexeme, literal, line);
+    }
+
+    private List<Expr> expressions() {
+        int count = readCount(in, 1);
+        List<Expr> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(expression());
+        }
+        return expressions;
+    }
+
+    private Expr expression() {
+        enter();
+        try {
+            return readExpression();
+        } finally {
+            depth--;
+        }
+    }
+
+    private Stmt statement() {
+        enter();
+        try {
+            return readStatement();
+        } finally {
+            depth--;
+        }
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Tree deeper than " + MAX_DEPTH);
+        }
+    }
+
+    private Expr readExpression() {
+        byte kind = in.get();
+        switch (kind) {
+            case NULL:
+                return null;
+            case ASSIGN:
+                return new Expr.Assign(token(), expression());
+            case LOGICAL:
+                return new Expr.Logical(expression(), token(), expression());
+            case BINARY:
+                return new Expr.Binary(expression(), token(), expression());
+            case GROUPING:
+                return new Expr.Grouping(expression());
+            case NUMBER:
+                return new Expr.Literal(in.getDouble());
+            case INTEGER:
+                return new Expr.Literal((double) readInt(in));
+            case STRING:
+                return new Expr.Literal(strings[readInt(in)]);
+            case TRUE:
+                return new Expr.Literal(true);
+            case FALSE:
+                return new Expr.Literal(false);
+            case NIL:
+                return new Expr.Literal(null);
+            case UNARY:
+                return new Expr.Unary(token(), expression());
+            case CALL:
+                return new Expr.Call(expression(), token(), expressions());
+            case VARIABLE:
+                return new Expr.Variable(token());
+            default:
+                throw new IllegalArgumentException("Bad expression kind " + kind);
+        }
+    }
+
+    private Stmt readStatement() {
+        byte kind = in.get();
+        switch (kind) {
+            case NULL:
+                return null;
+            case BLOCK:
+                return new Stmt.Block(statements());
+            case IF:
+                return new Stmt.If(expression(), statement(), statement());
+            case WHILE:
+                return new Stmt.While(expression(), statement());
+            case EXPRESSION:
+                return new Stmt.Expression(expression());
+            case PRINT:
+                return new Stmt.Print(expression());
+            case FUNCTION: {
+                Token name = token();
+                // Token 至少是种类、lexeme、行号三个字节
+                int count = readCount(in, 3);
+                List<Token> params = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    params.add(token());
+                }
+                return new Stmt.Function(name, params, statements());
+            }
+            case RETURN:
+                return new Stmt.Return(token(), expression());
+            case VAR:
+                return new Stmt.Var(token(), expression());
+            default:
+                throw new IllegalArgumentException("Bad statement kind " + kind);
+        }
+    }
+}
+
+/**
+ * AstWriter
+ *
+ * 按 AstCache 的格式写语法树，字段的顺序和构造函数的参数一样，
+ * 读的时候按顺序调构造函数就行。字符串都放进池里，节点里只写下标。
+ */
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    final Map<String, Integer> strings = new LinkedHashMap<>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int line = 0;
+
+    void statements(List<Stmt> statements) {
+        integer(statements.size());
+        for (Stmt statement : statements) {
+            statement(statement);
+        }
+    }
+
+    private void statement(Stmt statement) {
+        if (statement == null) {
+            body.write(AstCache.NULL);
+        } else {
+            statement.accept(this);
+        }
+    }
+
+    private void expression(Expr expression) {
+        if (expression == null) {
+            body.write(AstCache.NULL);
+        } else {
+            expression.accept(this);
+        }
+    }
+
+    private void integer(int value) {
+        try {
+            AstCache.writeInt(body, value);
+        } catch (IOException e) {
+            // ByteArrayOutputStream 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void string(String value) {
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+        }
+        integer(index);
+    }
+
+    private void token(Token token) {
+        body.write(token.type.ordinal());
+        string(token.lexeme);
+        // 差可能是负的（比如 for 循环的 increment 放到了循环体后面），zigzag 编码
+        int delta = token.line() - line;
+        integer((delta << 1) ^ (delta >> 31));
+        line = token.line();
+    }
+
+    private static boolean isSmall(double value) {
+        // 非负的整数，-0.0 不算
+        int small = (int) value;
+        return small >= 0 && Double.doubleToRawLongBits(small) == Double.doubleToRawLongBits(value);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        body.write(AstCache.ASSIGN);
+        token(expr.name);
+        expression(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        body.write(AstCache.LOGICAL);
+        expression(expr.left);
+        token(expr.operator);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        body.write(AstCache.BINARY);
+        expression(expr.left);
+        token(expr.operator);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        body.write(AstCache.GROUPING);
+        expression(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value instanceof Double && isSmall((Double) value)) {
+            body.write(AstCache.INTEGER);
+            integer((int) (double) (Double) value);
+        } else if (value instanceof Double) {
+            body.write(AstCache.NUMBER);
+            long bits = Double.doubleToRawLongBits((Double) value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                body.write((int) (bits >>> shift));
+            }
+        } else if (value instanceof String) {
+            body.write(AstCache.STRING);
+            string((String) value);
+        } else if (value instanceof Boolean) {
+            body.write((Boolean) value ? AstCache.TRUE : AstCache.FALSE);
+        } else if (value == null) {
+            body.write(AstCache.NIL);
+        } else {
+            throw new IllegalArgumentException("Cannot cache literal " + value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        body.write(AstCache.UNARY);
+        token(expr.operator);
+        expression(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        body.write(AstCache.CALL);
+        expression(expr.callee);
+        token(expr.mark);
+        integer(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            expression(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        body.write(AstCache.VARIABLE);
+        token(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        body.write(AstCache.BLOCK);
+        statements(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        body.write(AstCache.IF);
+        expression(stmt.condition);
+        statement(stmt.thenBranch);
+        statement(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        body.write(AstCache.WHILE);
+        expression(stmt.condition);
+        statement(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        body.write(AstCache.EXPRESSION);
+        expression(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        body.write(AstCache.PRINT);
+        expression(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        body.write(AstCache.FUNCTION);
+        token(stmt.name);
+        integer(stmt.params.size());
+        for (Token param : stmt.params) {
+            token(param);
+        }
+        statements(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        body.write(AstCache.RETURN);
+        token(stmt.keyword);
+        expression(stmt.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        body.write(AstCache.VAR);
+        token(stmt.name);
+        expression(stmt.initializer);
+        return null;
+    }
+}
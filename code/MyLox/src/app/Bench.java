@@ -0,0 +1,310 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import app.vm.Compiler;
+import app.vm.ObjFunction;
+import app.vm.VM;
+
+/**
+ * Bench
+ *
+ * 简单的基准测试：每个脚本只解析一次，然后用各个执行引擎分别跑若干遍，
+ * 打印最好和平均耗时、每遍分配的内存，以及相对树遍历解释器的加速比。
+ * 脚本自己的输出会被丢掉。预热至少跑 warmup 遍并且至少 2 秒，
+ * 虚拟机的主循环比较大，要多跑一会儿 JIT 才会编译好。
+ * 加上 -lex 的时候只比较词法分析：手写的 Scanner 和生成的 DfaScanner；
+ * 加上 -keywords 的时候只比较关键字查找：截出字符串查 HashMap 和 Keywords 的完美哈希；
+ * 加上 -parse 的时候比较只扫描和扫描加解析，两者的差是 Parser 自己的开销。
+ * 加上 -threads 的时候测并发执行的吞吐量：脚本 MyLox.compile 一次，每遍同时 eval INVOCATIONS 次，
+ * 分别用 1、2、4 …… 直到处理器个数的线程池和 ScriptThreads 的执行器，加速比就是吞吐量之比；
+ * 这时候分配的内存只算提交任务的线程。
+ *
+ * usage: Bench [-n runs] [-w warmup] [-lex | -keywords | -parse | -threads] file.lox...
+ */
+public class Bench {
+    private static final String[] ENGINES = { "ast", "nodes", "vm", "jit" };
+    private static final String[] LEXERS = { "scanner", "dfa" };
+    private static final String[] LOOKUPS = { "map", "hash" };
+    private static final String[] PHASES = { "lex", "parse" };
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final int INVOCATIONS = 1000;
+    private static final PrintStream out = System.out;
+    private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+    private static Runnable prepare(String engine, List<Stmt> statements) {
+        switch (engine) {
+        case "vm":
+            ObjFunction script = new Compiler().compile(statements);
+            return () -> {
+                VM vm = new VM(discard);
+                Native.install(vm);
+                vm.interpret(script);
+            };
+        case "jit":
+            // 编译结果在各遍之间共用，测的是编译好以后的速度
+            JitCompiler jit = new JitCompiler();
+            return () -> {
+                Interpreter interpreter = new Interpreter(discard);
+                interpreter.jit = jit;
+                interpreter.interpret(statements);
+            };
+        case "nodes":
+            // Node 树属于解释器，各遍共用一个解释器，测的是特化以后的速度
+            Interpreter specializing = new Interpreter(discard);
+            specializing.nodes = new NodeBuilder(specializing);
+            return () -> specializing.interpret(statements);
+        default:
+            return () -> new Interpreter(discard).interpret(statements);
+        }
+    }
+
+    private static List<Stmt> parse(String path) throws IOException {
+        List<Stmt> statements;
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)), Charset.defaultCharset())) {
+            statements = new Parser(new Scanner(reader).tokens()).parse();
+        }
+        new Resolver().resolve(statements);
+        if (MyLox.hadError) {
+            throw new IllegalArgumentException(path + " has errors.");
+        }
+        return statements;
+    }
+
+    private static int lex(String lexer, String source) {
+        // 和 Parser 一样边取 token 边释放，返回 token 个数
+        Lexer scanner = lexer.equals("dfa") ? new DfaScanner(source) : new Scanner(source);
+        TokenBuffer tokens = scanner.tokens();
+        int count = 0;
+        while (tokens.type(count) != TokenType.EOF) {
+            count++;
+            tokens.release(count);
+        }
+        return count;
+    }
+
+    private static int phase(String phase, String source) {
+        // 返回 token 个数或者声明的个数
+        if (phase.equals("lex")) {
+            return lex("scanner", source);
+        }
+        return new Parser(new Scanner(source).tokens()).parse().size();
+    }
+
+    private static List<String> workers() {
+        // 1、2、4 …… 个平台线程，最后是 ScriptThreads 的执行器
+        List<String> workers = new ArrayList<>();
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int count = 1; count < processors; count *= 2) {
+            workers.add(Integer.toString(count));
+        }
+        workers.add(Integer.toString(processors));
+        workers.add(ScriptThreads.virtual() ? "virtual" : "pool");
+        return workers;
+    }
+
+    private static int invoke(CompiledScript compiled, ExecutorService executor) {
+        // 同时提交 INVOCATIONS 次 eval，每次有自己的 bindings，等全部完成
+        List<Future<Object>> results = new ArrayList<>(INVOCATIONS);
+        for (int i = 0; i < INVOCATIONS; i++) {
+            results.add(executor.submit(() -> compiled.eval(new HashMap<>(), discard)));
+        }
+        try {
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        return results.size();
+    }
+
+    private static int[] words(char[] chars) {
+        // 源码里每个标识符的起始位置和长度，两个一组
+        int[] words = new int[16];
+        int count = 0;
+        int i = 0;
+        while (i < chars.length) {
+            if (!isAlpha(chars[i])) {
+                i++;
+                continue;
+            }
+            int from = i;
+            while (i < chars.length && (isAlpha(chars[i]) || (chars[i] >= '0' && chars[i] <= '9'))) {
+                i++;
+            }
+            if (count + 2 > words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            words[count++] = from;
+            words[count++] = i - from;
+        }
+        return Arrays.copyOf(words, count);
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static int keywords(String lookup, char[] chars, int[] words, Map<String, TokenType> map) {
+        // 返回关键字的个数
+        int found = 0;
+        for (int i = 0; i < words.length; i += 2) {
+            TokenType type;
+            if (lookup.equals("map")) {
+                type = map.get(new String(chars, words[i], words[i + 1]));
+            } else {
+                type = Keywords.lookup(chars, words[i], words[i + 1]);
+            }
+            if (type != null && type != TokenType.IDENTIFIER) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static long allocatedBytes() {
+        // HotSpot 才有这个接口，没有就返回 0
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int runs = 10;
+        int warmup = 5;
+        boolean lexOnly = false;
+        boolean keywordsOnly = false;
+        boolean parseOnly = false;
+        boolean threads = false;
+        int first = 0;
+        while (first < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-n")) {
+                runs = Integer.parseInt(args[++first]);
+            } else if (args[first].equals("-w")) {
+                warmup = Integer.parseInt(args[++first]);
+            } else if (args[first].equals("-lex")) {
+                lexOnly = true;
+            } else if (args[first].equals("-keywords")) {
+                keywordsOnly = true;
+            } else if (args[first].equals("-parse")) {
+                parseOnly = true;
+            } else if (args[first].equals("-threads")) {
+                threads = true;
+            } else {
+                System.out.println(
+                        "usage: Bench [-n runs] [-w warmup] [-lex | -keywords | -parse | -threads] file.lox...");
+                return;
+            }
+            first++;
+        }
+
+        String column = lexOnly ? "lexer"
+                : keywordsOnly ? "lookup" : parseOnly ? "phase" : threads ? "workers" : "engine";
+        out.printf("%-16s %-7s %10s %10s %12s %8s%n", "script", column, "best ms", "mean ms", "alloc KB/run",
+                "speedup");
+
+        for (int i = first; i < args.length; i++) {
+            String script = Paths.get(args[i]).getFileName().toString();
+            double baseline = 0;
+            if (lexOnly) {
+                String source = new String(Files.readAllBytes(Paths.get(args[i])), Charset.defaultCharset());
+                for (String lexer : LEXERS) {
+                    double best = measure(script, lexer, () -> lex(lexer, source), warmup, runs, baseline);
+                    baseline = baseline == 0 ? best : baseline;
+                }
+                continue;
+            }
+            if (parseOnly) {
+                String source = new String(Files.readAllBytes(Paths.get(args[i])), Charset.defaultCharset());
+                for (String phase : PHASES) {
+                    double best = measure(script, phase, () -> phase(phase, source), warmup, runs, baseline);
+                    baseline = baseline == 0 ? best : baseline;
+                }
+                continue;
+            }
+            if (threads) {
+                CompiledScript compiled = MyLox.compile(
+                        new String(Files.readAllBytes(Paths.get(args[i])), Charset.defaultCharset()));
+                for (String workers : workers()) {
+                    ExecutorService executor = workers.matches("\\d+")
+                            ? Executors.newFixedThreadPool(Integer.parseInt(workers))
+                            : ScriptThreads.newExecutor();
+                    try {
+                        double best = measure(script, workers, () -> invoke(compiled, executor), warmup, runs,
+                                baseline);
+                        baseline = baseline == 0 ? best : baseline;
+                    } finally {
+                        executor.shutdown();
+                    }
+                }
+                continue;
+            }
+            if (keywordsOnly) {
+                char[] chars = new String(Files.readAllBytes(Paths.get(args[i])), Charset.defaultCharset())
+                        .toCharArray();
+                int[] words = words(chars);
+                Map<String, TokenType> map = Keywords.asMap();
+                for (String lookup : LOOKUPS) {
+                    double best = measure(script, lookup, () -> keywords(lookup, chars, words, map), warmup, runs,
+                            baseline);
+                    baseline = baseline == 0 ? best : baseline;
+                }
+                continue;
+            }
+            List<Stmt> statements = parse(args[i]);
+            for (String engine : ENGINES) {
+                double best = measure(script, engine, prepare(engine, statements), warmup, runs, baseline);
+                baseline = baseline == 0 ? best : baseline;
+            }
+        }
+    }
+
+    private static double measure(String script, String name, Runnable body, int warmup, int runs, double baseline) {
+        // 脚本的输出丢掉，返回最好的一遍用了多少毫秒
+        System.setOut(discard);
+        try {
+            long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+            for (int w = 0; w < warmup || System.nanoTime() < warmupEnd; w++) {
+                body.run();
+            }
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            long allocated = allocatedBytes();
+            for (int r = 0; r < runs; r++) {
+                long start = System.nanoTime();
+                body.run();
+                long elapsed = System.nanoTime() - start;
+                best = Math.min(best, elapsed);
+                total += elapsed;
+            }
+            allocated = allocatedBytes() - allocated;
+
+            double bestMs = best / 1e6;
+            out.printf("%-16s %-7s %10.2f %10.2f %12d %7.2fx%n", script, name, bestMs, total / 1e6 / runs,
+                    allocated / runs / 1024, (baseline == 0 ? bestMs : baseline) / bestMs);
+            return bestMs;
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
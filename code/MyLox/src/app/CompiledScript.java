@@ -0,0 +1,90 @@
+package app;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompiledScript
+ *
+ * MyLox.compile 的结果：解析、Resolver 和 Optimizer 都已经做完的语法树，之后不再改变。
+ * 每次 eval 新建一个 Interpreter，bindings 里的值先定义成全局变量再执行，
+ * 所以同一个脚本可以换着 bindings 反复执行，只付执行的代价。
+ * 执行的时候语法树只读，全局环境、输出和错误都属于这一次 eval，
+ * 多个线程可以同时 eval 同一个脚本，只要各自用自己的 bindings。
+ *
+ * 宿主和脚本之间的值：数字都是 Double，字符串在脚本里带着引号，
+ * 进出的时候加上、去掉，宿主看到的是不带引号的 String。只有能换成宿主类型的值
+ * （Double、Boolean、String、nil）写回 bindings；函数这些运行时的对象留在这次执行里，
+ * 不会跟着 bindings 带到下一次。
+ */
+public final class CompiledScript {
+    private final List<Stmt> statements;
+
+    CompiledScript(List<Stmt> statements) {
+        this.statements = Collections.unmodifiableList(statements);
+    }
+
+    public Object eval() {
+        return eval(new HashMap<>());
+    }
+
+    /**
+     * 执行脚本，返回最后一条表达式语句的值。执行完以后脚本里值是数字、布尔、字符串、nil 的
+     * 全局变量（包括 bindings 里给的）写回 bindings
+     */
+    public Object eval(Map<String, Object> bindings) {
+        return eval(bindings, System.out);
+    }
+
+    /** 同上，print 的输出写到 out */
+    public Object eval(Map<String, Object> bindings, PrintStream out) {
+        Interpreter interpreter = new Interpreter(out);
+        bindings.forEach((name, value) -> interpreter.globals.define(name, toLox(value)));
+        Object result;
+        try {
+            result = interpreter.run(statements);
+        } catch (RuntimeError error) {
+            throw new ScriptError(error.getMessage(), error.token.line());
+        }
+        interpreter.globals.forEach((name, value) -> {
+            // 内置函数、Lox 函数这些宿主用不了，也不该留到下一次执行
+            if (value == null || value instanceof Double || value instanceof Boolean
+                    || value instanceof CharSequence) {
+                bindings.put(name, toHost(value));
+            }
+        });
+        return toHost(result);
+    }
+
+    /** 宿主交给脚本、脚本没有改的值，写回来以后是什么样子 */
+    public static Object hostValue(Object value) {
+        return toHost(toLox(value));
+    }
+
+    static Object toLox(Object value) {
+        // 数字都换成 Double，字符串两头加上引号，其他的原样交给脚本。和 toHost 正好相反
+        if (value instanceof Number && !(value instanceof Double)) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof CharSequence || value instanceof Character) {
+            return "\"" + value + "\"";
+        }
+        return value;
+    }
+
+    static Object toHost(Object value) {
+        // 只去掉两头的引号，中间的（宿主给的、拼接留下的）原样留下，
+        // 宿主的字符串经过 toLox 再回来不变
+        if (value instanceof CharSequence) {
+            String text = value.toString();
+            if (text.length() >= 2 && text.charAt(0) == '"' && text.charAt(text.length() - 1) == '"') {
+                return text.substring(1, text.length() - 1);
+            }
+            return text;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,119 @@
+package app;
+
+import static app.LexerTables.ACCEPT;
+import static app.LexerTables.ACCEPTING;
+import static app.LexerTables.CLASSES;
+import static app.LexerTables.CLASS_COUNT;
+import static app.LexerTables.DEAD;
+import static app.LexerTables.ERRORS;
+import static app.LexerTables.LINES;
+import static app.LexerTables.NEXT;
+import static app.LexerTables.START;
+import static app.LexerTables.TOKENS;
+import static app.TokenType.EOF;
+
+import java.io.Reader;
+
+/**
+ * DfaScanner
+ *
+ * 表驱动的词法分析器，转移表由 tools/GenerateLexer 从正则生成。
+ * 状态都是转移表里行的起始下标。
+ * 从开始状态一直走到死状态，记下最后一次经过接受状态的位置，
+ * 退回到那里就是最长匹配，接受状态对应的规则决定生成什么 token。
+ */
+class DfaScanner extends Lexer {
+    DfaScanner(Reader reader) {
+        super(reader);
+    }
+
+    DfaScanner(String source) {
+        super(source);
+    }
+
+    @Override
+    void scan() {
+        // 热循环里只用局部变量，字符用完了才去 fill；
+        // 空白和注释丢掉以后直接接着扫描下一个
+        char[] chars = buffer;
+        int at = position;
+        int end = limit;
+        for (;;) {
+            int from = at;
+            start = offset + from;
+            int state = START;
+            int accepted = DEAD;
+            int length = 0;
+            // 读到了源码末尾；at == from 但不在末尾说明第一个字符就没有转移
+            boolean drained = false;
+            for (;;) {
+                if (at == end) {
+                    position = at;
+                    boolean more = fill(1);
+                    // fill 可能把字符挪到了 buffer 开头，读到末尾的那一次也一样
+                    chars = buffer;
+                    at = position;
+                    end = limit;
+                    from = start - offset;
+                    if (!more) {
+                        drained = true;
+                        break;
+                    }
+                }
+                char c = chars[at];
+                int next = NEXT[state + CLASSES[c < 128 ? c : 128]];
+                if (next == DEAD) {
+                    break;
+                }
+                at++;
+                if (next == state) {
+                    // 转移到自己（标识符、空白、注释、字符串中间），状态不变，
+                    // 后面每个字符的查表互不依赖，单独跑一个紧的循环
+                    while (at < end) {
+                        c = chars[at];
+                        if (NEXT[state + CLASSES[c < 128 ? c : 128]] != state) {
+                            break;
+                        }
+                        at++;
+                    }
+                }
+                state = next;
+                if (state >= ACCEPTING) {
+                    accepted = state;
+                    length = at - from;
+                }
+            }
+
+            if (accepted == DEAD) {
+                if (at == from && drained) {
+                    position = at;
+                    tokens.add(EOF, start, 0, line);
+                    return;
+                }
+                // 没有规则能匹配，跳过这个字符
+                at = from + 1;
+                errors.error(line, "Unexpected character.");
+                continue;
+            }
+            // 退回到最后一次接受的位置
+            at = from + length;
+
+            int rule = ACCEPT[accepted / CLASS_COUNT] - 1;
+            if (LINES[rule]) {
+                for (int i = from; i < at; i++) {
+                    if (chars[i] == '\n') {
+                        line++;
+                    }
+                }
+            }
+            if (ERRORS[rule] != null) {
+                errors.error(line, ERRORS[rule]);
+            }
+            if (TOKENS[rule] != null) {
+                position = at;
+                tokens.add(TOKENS[rule], start, length, line);
+                return;
+            }
+        }
+    }
+}
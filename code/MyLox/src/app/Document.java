@@ -0,0 +1,387 @@
+package app;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document
+ *
+ * 给编辑器用的增量前端。源码按顶层声明切成一段一段，每段记着自己的文本、
+ * 语法树和开头所在的行。改了一处以后只从改动碰到的那一段开始重新扫描、解析，
+ * 解析到某个声明的开头和原来某一段的开头对上、并且已经过了改动的地方就停下，
+ * 后面的段连同语法树原样留下，只挪一下位置和行号。
+ * 相邻的段分成块，段的位置和行号相对所在的块，挪的时候只挪改动所在块里后面的段
+ * 和后面各块的起点，不用一段一段挪到文件末尾。
+ * 扫描、解析的错误也记在段上，行号相对段的开头，挪段的时候跟着挪。
+ * 每次改完把整个文档当前的错误交给构造时给的 ErrorReporter，也作为 edit 的返回值；
+ * 不碰 MyLox 的静态状态，一个进程里可以同时有多个 Document。
+ */
+public final class Document {
+    // 每块的段数，一块超过两倍就重新切开
+    private static final int BLOCK = 256;
+
+    private static final class Block {
+        // 在整个源码里的起始位置
+        int start;
+        final Token.Anchor anchor;
+        int size = 0;
+
+        Block(int start, int line) {
+            this.start = start;
+            this.anchor = new Token.Anchor(line);
+        }
+    }
+
+    /**
+     * Diagnostic
+     *
+     * 段里的一个错误，line 相对段的开头
+     */
+    private static final class Diagnostic {
+        final String file;
+        final int line;
+        final String where;
+        final String message;
+        // 还没交给段的时候用：词法错误是出错的 token 在 window 里的起始位置，语法错误是 -1
+        final int position;
+
+        Diagnostic(String file, int line, String where, String message, int position) {
+            this.file = file;
+            this.line = line;
+            this.where = where;
+            this.message = message;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Collector
+     *
+     * 解析的时候先把错误收在这里，再交给它所在的段。语法错误属于正在解析的声明；
+     * 词法错误属于出错的文本所在的段，解析一个声明时多看的那个 token 的错误属于下一段
+     */
+    private static final class Collector extends ErrorReporter {
+        final List<Diagnostic> pending = new ArrayList<>();
+        Lexer lexer;
+        private boolean scanning = false;
+
+        Collector(String file) {
+            super(file);
+        }
+
+        @Override
+        void error(int line, String message) {
+            // 只有词法分析器按行号报错
+            scanning = true;
+            super.error(line, message);
+            scanning = false;
+        }
+
+        @Override
+        void report(String file, int line, String where, String message) {
+            pending.add(new Diagnostic(file, line, where, message, scanning ? lexer.start : -1));
+        }
+
+        void moveTo(Segment segment, int end) {
+            // 交出 window 里 end 之前的词法错误和所有的语法错误，行号换成相对段的开头
+            List<Diagnostic> rest = new ArrayList<>();
+            for (Diagnostic diagnostic : pending) {
+                if (diagnostic.position >= end) {
+                    rest.add(diagnostic);
+                    continue;
+                }
+                segment.diagnostics.add(new Diagnostic(diagnostic.file, diagnostic.line - segment.anchor.line(),
+                        diagnostic.where, diagnostic.message, -1));
+            }
+            pending.clear();
+            pending.addAll(rest);
+        }
+    }
+
+    private static final class Segment {
+        Block block;
+        // 相对所在块的起始位置
+        int start;
+        String text;
+        // declared 为 false 表示这段只有空白和注释；声明有语法错误的时候 statement 是 null
+        Stmt statement;
+        boolean declared;
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+        // 这段开头所在的行，这段生成的 Token 的行号都相对它
+        final Token.Anchor anchor;
+
+        Segment(Block block, int start, int line) {
+            this.block = block;
+            this.start = start - block.start;
+            this.anchor = new Token.Anchor(block.anchor, line);
+        }
+
+        int start() {
+            return block.start + start;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final ErrorReporter errors;
+    private int length = 0;
+
+    public Document(String text) {
+        this(text, new ErrorReporter(null));
+    }
+
+    public Document(String text, ErrorReporter errors) {
+        this.errors = errors;
+        Block block = new Block(0, 1);
+        List<Segment> fresh = new ArrayList<>();
+        reparse(text, 0, block, 0, 1, text.length(), 0, fresh);
+        segments.addAll(fresh);
+        block.size = fresh.size();
+        balance(0);
+        length = text.length();
+        report();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public String text() {
+        StringBuilder text = new StringBuilder(length);
+        for (Segment segment : segments) {
+            text.append(segment.text);
+        }
+        return text.toString();
+    }
+
+    public List<Stmt> statements() {
+        // 和 Parser.parse() 一样，出错的声明是 null
+        List<Stmt> statements = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            if (segment.declared) {
+                statements.add(segment.statement);
+            }
+        }
+        return statements;
+    }
+
+    public boolean hadError() {
+        for (Segment segment : segments) {
+            if (!segment.diagnostics.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<String> diagnostics() {
+        // 和整个重新解析一遍报的错误相同，按段的顺序，行号是现在的
+        List<String> messages = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (Diagnostic diagnostic : segment.diagnostics) {
+                messages.add(ErrorReporter.format(diagnostic.file, segment.anchor.line() + diagnostic.line,
+                        diagnostic.where, diagnostic.message));
+            }
+        }
+        return messages;
+    }
+
+    private List<String> report() {
+        for (Segment segment : segments) {
+            for (Diagnostic diagnostic : segment.diagnostics) {
+                errors.report(diagnostic.file, segment.anchor.line() + diagnostic.line, diagnostic.where,
+                        diagnostic.message);
+            }
+        }
+        return diagnostics();
+    }
+
+    public List<String> edit(int offset, int removed, String inserted) {
+        // 删掉 [offset, offset + removed)，在 offset 插入 inserted，返回改完以后文档里所有的错误
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside 0.." + length);
+        }
+        // 解析一个声明的时候会多看一个 token（出错后的同步、if 后面的 else），
+        // 声明在哪里结束取决于下一段的第一个 token，所以从改动所在段的前一段开始
+        int first = Math.max(segmentBefore(offset + 1) - 1, 0);
+        int last = segmentBefore(offset + removed + 1);
+        Segment head = segments.get(first);
+        int windowStart = head.start();
+
+        StringBuilder window = new StringBuilder();
+        for (int i = first; i <= last; i++) {
+            window.append(segments.get(i).text);
+        }
+        window.replace(offset - windowStart, offset + removed - windowStart, inserted);
+
+        // 新的段都放进第一段所在的块
+        int delta = inserted.length() - removed;
+        List<Segment> fresh = new ArrayList<>();
+        int reuse = reparse(window.toString(), last + 1, head.block, windowStart, head.anchor.line(),
+                offset + inserted.length(), delta, fresh);
+        List<Segment> replaced = segments.subList(first, reuse);
+        for (Segment segment : replaced) {
+            segment.block.size--;
+        }
+        replaced.clear();
+        segments.addAll(first, fresh);
+        head.block.size += fresh.size();
+        balance(first);
+        length += delta;
+        return report();
+    }
+
+    private int segmentBefore(int offset) {
+        // 开头在 offset 之前的最后一段，没有就是 -1
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).start() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    private int reparse(String window, int next, Block block, int windowStart, int line, int editEnd, int delta,
+            List<Segment> fresh) {
+        // 从 window 开始解析，window 后面接着 next 开始的旧段。
+        // 返回第一个原样留下的旧段，新解析出来的段放在 fresh 里
+        Scanner scanner = new Scanner(new SegmentReader(window, next), line);
+        // 扫描是解析的时候顺带做的，词法错误算在正在解析的那个声明的段上
+        Collector collector = new Collector(errors.file());
+        collector.lexer = scanner;
+        scanner.errors = collector;
+        TokenBuffer tokens = scanner.tokens();
+        Parser parser = new Parser(tokens);
+        int reuse = next;
+        for (;;) {
+            int at = windowStart + parser.offset();
+            // 上一个声明和它后面的空白、注释里的错误都归上一段，下一个 token 的归下一段
+            if (!fresh.isEmpty()) {
+                collector.moveTo(fresh.get(fresh.size() - 1), parser.offset());
+            }
+            if (!fresh.isEmpty() && at >= editEnd) {
+                // 旧段的位置已经按改动挪过了
+                while (reuse < segments.size() && segments.get(reuse).start() + delta < at) {
+                    reuse++;
+                }
+                if (reuse < segments.size() && segments.get(reuse).start() + delta == at) {
+                    // 还没交出去的是留下的这段第一个 token 的错误，这段自己已经记着了
+                    shift(reuse, delta, parser.line() - segments.get(reuse).anchor.line());
+                    break;
+                }
+            }
+            if (parser.isAtEnd()) {
+                // 最后一个声明后面的空白和注释归最后一段，比如没有结束的字符串
+                if (fresh.isEmpty()) {
+                    fresh.add(new Segment(block, windowStart, line));
+                }
+                collector.moveTo(fresh.get(fresh.size() - 1), Integer.MAX_VALUE);
+                reuse = segments.size();
+                break;
+            }
+
+            Segment segment = fresh.isEmpty()
+                    ? new Segment(block, windowStart, line)
+                    : new Segment(block, at, parser.line());
+            tokens.anchor(segment.anchor);
+            segment.statement = parser.declaration();
+            segment.declared = true;
+            fresh.add(segment);
+        }
+
+        // 重新解析过的文本分给新的段
+        StringBuilder text = new StringBuilder(window);
+        for (int i = next; i < reuse; i++) {
+            text.append(segments.get(i).text);
+        }
+        for (int i = 0; i < fresh.size(); i++) {
+            int from = fresh.get(i).start() - windowStart;
+            int to = i + 1 < fresh.size() ? fresh.get(i + 1).start() - windowStart : text.length();
+            fresh.get(i).text = text.substring(from, to);
+        }
+        return reuse;
+    }
+
+    private void shift(int from, int delta, int lines) {
+        // 同一块里后面的段一段一段挪，后面的块只挪块的起点
+        Block block = segments.get(from).block;
+        int i = from;
+        for (; i < segments.size() && segments.get(i).block == block; i++) {
+            Segment segment = segments.get(i);
+            segment.start += delta;
+            segment.anchor.line += lines;
+        }
+        while (i < segments.size()) {
+            block = segments.get(i).block;
+            block.start += delta;
+            block.anchor.line += lines;
+            i += block.size;
+        }
+    }
+
+    private void balance(int index) {
+        // index 所在的块太大了就切成 BLOCK 段一块，第一块还用原来的
+        Block block = segments.get(index).block;
+        if (block.size <= 2 * BLOCK) {
+            return;
+        }
+        int from = index;
+        while (from > 0 && segments.get(from - 1).block == block) {
+            from--;
+        }
+        int to = from + block.size;
+        Block current = block;
+        for (int i = from + BLOCK; i < to; i++) {
+            Segment segment = segments.get(i);
+            int start = segment.start();
+            if ((i - from) % BLOCK == 0) {
+                current = new Block(start, segment.anchor.line());
+            }
+            segment.block = current;
+            segment.start = start - current.start;
+            segment.anchor.reparent(current.anchor);
+            current.size++;
+        }
+        block.size = BLOCK;
+    }
+
+    /**
+     * SegmentReader
+     *
+     * 先读改过的文本，再接着读后面的旧段
+     */
+    private final class SegmentReader extends Reader {
+        private String text;
+        private int position = 0;
+        private int next;
+
+        SegmentReader(String text, int next) {
+            this.text = text;
+            this.next = next;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            while (position == text.length()) {
+                if (next >= segments.size()) {
+                    return -1;
+                }
+                text = segments.get(next++).text;
+                position = 0;
+            }
+            int read = Math.min(count, text.length() - position);
+            text.getChars(position, position + read, buffer, offset);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
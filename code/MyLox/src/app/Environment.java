@@ -1,35 +1,73 @@
 package app;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Environment
+ *
+ * 全局环境用 HashMap 按名字存放变量的 Binding；局部环境（函数、代码块）用数组存放，
+ * 下标由 Resolver 事先算好，读写时不再需要按名字查找。
+ * 局部变量是数字时可以不装箱，值放在 numbers 里，slots 对应的位置放 NUMBER 作标记。
  */
 public class Environment {
-    private final Map<String, Object> values = new HashMap<>();
-    final Environment enclosing;
+    static final Object NUMBER = new Object();
+
+    // 全局变量的存储单元。找到的单元按编号缓存起来，以后直接读写，不再查 HashMap。
+    // 重新 define 时沿用原来的单元，所以缓存不会过期
+    static final class Binding {
+        Object value;
+
+        Binding(Object value) {
+            this.value = value;
+        }
+    }
+
+    private final Map<String, Binding> values;
+    // 从 Interpreter 的帧栈里借来的局部环境，每次借出去的时候换成新的外层
+    Environment enclosing;
+    final Object[] slots;
+    // 第一次不装箱地存数字时才分配
+    double[] numbers;
+    // 全局环境才有，按全局变量的编号缓存 Binding
+    private Binding[] cache;
 
     Environment() {
         enclosing = null;
+        values = new HashMap<>();
+        slots = null;
+        cache = new Binding[16];
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        values = null;
+        slots = new Object[size];
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        Binding binding = values.get(name);
+        if (binding == null) {
+            values.put(name, new Binding(value));
+        } else {
+            binding.value = value;
+        }
     }
 
-    Object get(Token name) {
+    Binding binding(Token name) {
         Environment t = this;
         while (true) {
             if (t == null) {
                 break;
             } else {
-                if (t.values.containsKey(name.lexeme)) {
-                    return t.values.get(name.lexeme);
+                // 局部环境没有名字，跳过
+                if (t.values != null) {
+                    Binding binding = t.values.get(name.lexeme);
+                    if (binding != null) {
+                        return binding;
+                    }
                 }
                 t = t.enclosing;
             }
@@ -38,20 +76,67 @@ public class Environment {
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
+    // index 是 Resolver 给全局变量名的编号，找到的单元按编号缓存在这个全局环境里。
+    // 缓存属于执行的这一方，不写在语法树上，同一棵语法树可以同时在多个全局环境里执行
+    Binding binding(int index, Token name) {
+        if (index < 0) {
+            // 没有经过 Resolver 的名字没有编号
+            return binding(name);
+        }
+        if (index < cache.length && cache[index] != null) {
+            return cache[index];
+        }
+        Binding binding = binding(name);
+        if (index >= cache.length) {
+            cache = Arrays.copyOf(cache, Math.max(index + 1, cache.length * 2));
+        }
+        cache[index] = binding;
+        return binding;
+    }
+
+    void forEach(BiConsumer<String, Object> action) {
+        // 只用在全局环境上，按名字交出每个变量的值
+        values.forEach((name, binding) -> action.accept(name, binding.value));
+    }
+
+    Object get(Token name) {
+        return binding(name).value;
+    }
+
     void assign(Token name, Object value) {
+        binding(name).value = value;
+    }
+
+    Environment ancestor(int depth) {
+        // 顺着作用域链向外走 depth 层
         Environment t = this;
-        while (true) {
-            if (t == null) {
-                break;
-            } else {
-                if (t.values.containsKey(name.lexeme)) {
-                    t.values.put(name.lexeme, value);
-                    // 退出循环
-                    return;
-                }
-                t = t.enclosing;
-            }
+        for (int i = 0; i < depth; i++) {
+            t = t.enclosing;
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return t;
+    }
+
+    Object get(int slot) {
+        Object value = slots[slot];
+        if (value == NUMBER) {
+            return numbers[slot];
+        }
+        return value;
+    }
+
+    void setNumber(int slot, double value) {
+        if (numbers == null) {
+            numbers = new double[slots.length];
+        }
+        numbers[slot] = value;
+        slots[slot] = NUMBER;
+    }
+
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).get(slot);
+    }
+
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+package app;
+
+import static app.TokenType.EOF;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ErrorReporter
+ *
+ * 词法分析器和 Parser 通过它报告错误。默认的 STDERR 直接打印并设置 MyLox.hadError；
+ * 多个文件并行扫描、解析的时候每个文件一个，错误先存起来，
+ * 全部解析完以后再按文件的顺序打印，线程之间不共用状态。
+ * 文件名为 null 的时候不带前缀。
+ */
+public class ErrorReporter {
+    static final ErrorReporter STDERR = new ErrorReporter(null) {
+        @Override
+        void report(String file, int line, String where, String message) {
+            MyLox.report(file, line, where, message);
+        }
+
+        @Override
+        public boolean hadError() {
+            return MyLox.hadError;
+        }
+    };
+
+    // 报错的时候带上文件名，token 自己没有文件名的时候用它，null 就不带
+    private final String file;
+    private final List<String> messages = new ArrayList<>();
+
+    public ErrorReporter(String file) {
+        this.file = file;
+    }
+
+    String file() {
+        return file;
+    }
+
+    void error(int line, String message) {
+        report(file, line, "", message);
+    }
+
+    void error(Token token, String message) {
+        // 多个文件连起来以后（比如 Resolver 看到的），token 自己知道来自哪个文件
+        String file = token.file() == null ? this.file : token.file();
+        if (token.type == EOF) {
+            report(file, token.line(), " at end", message);
+        } else {
+            report(file, token.line(), " at '" + token.lexeme + "' ", message);
+        }
+    }
+
+    void report(String file, int line, String where, String message) {
+        messages.add(format(file, line, where, message));
+    }
+
+    static String format(String file, int line, String where, String message) {
+        return MyLox.prefix(file) + "[line " + line + "] Error" + where + ": " + message;
+    }
+
+    public boolean hadError() {
+        return !messages.isEmpty();
+    }
+
+    public List<String> messages() {
+        return messages;
+    }
+
+    void print(PrintStream out) {
+        for (String message : messages) {
+            out.println(message);
+        }
+    }
+}
@@ -2,10 +2,10 @@ package app;
 
 import java.util.List;
 
-abstract class Expr {
-    abstract <R> R accept(Visitor<R> visitor);
+public abstract class Expr {
+    public abstract <R> R accept(Visitor<R> visitor);
 
-    interface Visitor<R> {
+    public interface Visitor<R> {
         R visitAssignExpr(Assign expr);
 
         R visitLogicalExpr(Logical expr);
@@ -23,115 +23,121 @@ abstract class Expr {
         R visitVariableExpr(Variable expr);
     }
 
-    static class Assign extends Expr {
+    public static class Assign extends Expr {
         Assign(Token name, Expr value) {
             this.name = name;
             this.value = value;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
 
-        final Token name;
-        final Expr value;
+        public final Token name;
+        public final Expr value;
+
+        int depth = -1;
+        int slot = -1;
     }
 
-    static class Logical extends Expr {
+    public static class Logical extends Expr {
         Logical(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
     }
 
-    static class Binary extends Expr {
+    public static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
     }
 
-    static class Grouping extends Expr {
+    public static class Grouping extends Expr {
         Grouping(Expr expression) {
             this.expression = expression;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
 
-        final Expr expression;
+        public final Expr expression;
     }
 
-    static class Literal extends Expr {
+    public static class Literal extends Expr {
         Literal(Object value) {
             this.value = value;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
 
-        final Object value;
+        public final Object value;
     }
 
-    static class Unary extends Expr {
+    public static class Unary extends Expr {
         Unary(Token operator, Expr right) {
             this.operator = operator;
             this.right = right;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
 
-        final Token operator;
-        final Expr right;
+        public final Token operator;
+        public final Expr right;
     }
 
-    static class Call extends Expr {
+    public static class Call extends Expr {
         Call(Expr callee, Token mark, List<Expr> arguments) {
             this.callee = callee;
             this.mark = mark;
             this.arguments = arguments;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
 
-        final Expr callee;
-        final Token mark;
-        final List<Expr> arguments;
+        public final Expr callee;
+        public final Token mark;
+        public final List<Expr> arguments;
     }
 
-    static class Variable extends Expr {
+    public static class Variable extends Expr {
         Variable(Token name) {
             this.name = name;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
 
-        final Token name;
+        public final Token name;
+
+        int depth = -1;
+        int slot = -1;
     }
 }
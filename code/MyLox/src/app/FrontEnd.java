@@ -0,0 +1,105 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * FrontEnd
+ *
+ * 多个源文件的前端。每个文件一个任务，在 ForkJoinPool 上并行扫描、解析，
+ * 每个文件的错误记在自己的 ErrorReporter 里，读不了的文件也是这个文件的一个错误。
+ * 全部完成以后按给出的顺序打印错误、把各个文件的语句连成一个程序，结果和任务怎么调度无关。
+ * token 都挂在带文件名的 anchor 下面，连起来以后 Resolver 和运行时的错误也能带上文件名。
+ */
+final class FrontEnd {
+    private final boolean useDfa;
+
+    FrontEnd(boolean useDfa) {
+        this.useDfa = useDfa;
+    }
+
+    /**
+     * Unit
+     *
+     * 一个源文件的扫描和解析
+     */
+    private final class Unit extends RecursiveTask<List<Stmt>> {
+        private final Path path;
+        private final ErrorReporter errors;
+
+        Unit(Path path) {
+            this.path = path;
+            this.errors = new ErrorReporter(path.toString());
+        }
+
+        @Override
+        protected List<Stmt> compute() {
+            // 和 runFile 一样，读不懂的字节换成替换字符
+            try (Reader reader = new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset())) {
+                Lexer lexer = useDfa ? new DfaScanner(reader) : new Scanner(reader);
+                lexer.errors = errors;
+                TokenBuffer tokens = lexer.tokens();
+                tokens.anchor(new Token.Anchor(path.toString(), 0));
+                return new Parser(tokens).parse();
+            } catch (IOException e) {
+                // 不存在、读不了的文件不打断别的文件，和语法错误一样在最后报告
+                errors.error(0, "Cannot read file (" + e.getClass().getSimpleName() + ").");
+                return new ArrayList<>();
+            }
+        }
+    }
+
+    static List<Path> sources(List<String> args) throws IOException {
+        // 目录换成下面所有的 .lox 文件，按路径排序
+        List<Path> sources = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (!Files.isDirectory(path)) {
+                sources.add(path);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(path)) {
+                sources.addAll(walk.filter(file -> file.toString().endsWith(".lox") && Files.isRegularFile(file))
+                        .sorted()
+                        .collect(Collectors.toList()));
+            }
+        }
+        return sources;
+    }
+
+    List<Stmt> parse(List<Path> sources) {
+        // 有错误的时候设置 MyLox.hadError
+        List<Unit> units = new ArrayList<>(sources.size());
+        for (Path source : sources) {
+            units.add(new Unit(source));
+        }
+        // 在当前线程里 invoke，当前线程也一起干活，其他的交给 ForkJoinPool.commonPool()
+        new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(units);
+            }
+        }.invoke();
+
+        List<Stmt> statements = new ArrayList<>();
+        for (Unit unit : units) {
+            unit.errors.print(System.err);
+            if (unit.errors.hadError()) {
+                MyLox.hadError = true;
+            }
+            statements.addAll(unit.join());
+        }
+        return statements;
+    }
+}
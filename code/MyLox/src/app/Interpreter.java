@@ -1,7 +1,8 @@
 package app;
 
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
 
 /**
  * Interpreter
@@ -16,17 +17,48 @@ class RuntimeError extends RuntimeException {
     }
 }
 
-class Return extends RuntimeException {
+// 数值通道拿到的不是数字，带着已经算出来的值退回通用路径
+class NotANumber extends RuntimeException {
     final Object value;
 
-    Return(Object value) {
+    NotANumber(Object value) {
         super(null, null, false, false);
         this.value = value;
     }
 }
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    Environment environment = new Environment();
+    // 解释器的状态都在这里，语法树执行的时候只读，所以多个 Interpreter 可以在不同的线程里
+    // 同时执行同一棵语法树，各自有自己的全局环境和输出
+    final Environment globals = new Environment();
+    Environment environment = globals;
+    final PrintStream out;
+    // 不为 null 时，热的函数编译成 JVM 字节码执行
+    JitCompiler jit = null;
+    // 不为 null 时，改用可以自我特化的 Node 树执行
+    NodeBuilder nodes = null;
+
+    // return 执行以后置位，所在的块和循环看到以后不再往下执行，由 executeBody 取走返回值
+    private boolean returning = false;
+    private Object returnValue = null;
+    // return f(...) 不在这里调用 f，返回 TAIL_CALL，由 LoxFunction.call 的循环接着调用
+    static final Object TAIL_CALL = new Object();
+    LoxFunction tailCallee;
+    Object[] tailArguments;
+
+    // 帧栈：pooled 的函数和块的环境从这里借，用完还回来。借和还的顺序和调用的嵌套一致，
+    // frames[0, frameTop) 是正在用的，上面的留着下次再借
+    private Environment[] frames = new Environment[16];
+    private int frameTop = 0;
+
+    Interpreter() {
+        this(System.out);
+    }
+
+    Interpreter(PrintStream out) {
+        this.out = out;
+        Native.install(globals);
+    }
 
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
@@ -66,15 +98,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Token operator = expr.operator;
-        Object right = evaluate(expr.right);
 
         switch (operator.type) {
         case MINUS:
-            checkNumberOperands(operator, right);
-            return -(double) right;
+            return negate(expr);
         case BANG:
-            // OR
-            return !isTruthy(right);
+            return !evaluateBoolean(expr.right);
         default:
             // 不会执行到这里
             break;
@@ -85,48 +114,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        // 计算左右值
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
-
+        // 数字运算走不装箱的通道，只在最后装一次箱
         switch (expr.operator.type) {
         case GREATER:
-            checkNumberOperands(expr.operator, left, right);
-            return (double) left > (double) right;
         case GREATER_EQUAL:
-            checkNumberOperands(expr.operator, left, right);
-            return (double) left >= (double) right;
         case LESS:
-            checkNumberOperands(expr.operator, left, right);
-            return (double) left < (double) right;
         case LESS_EQUAL:
-            checkNumberOperands(expr.operator, left, right);
-            return (double) left <= (double) right;
+            return compare(expr);
         case MINUS:
-            checkNumberOperands(expr.operator, left, right);
-            return (double) left - (double) right;
         case SLASH:
-            checkNumberOperands(expr.operator, left, right);
-            if ((double) right == 0) {
-                throw new RuntimeError(expr.operator, "divide zero");
-            }
-            return (double) left / (double) right;
         case STAR:
-            checkNumberOperands(expr.operator, left, right);
-            return (double) left * (double) right;
+            return arithmetic(expr);
         case BANG_EQUAL:
-            return !isEqual(left, right);
         case EQUAL_EQUAL:
-            return isEqual(left, right);
+            return equality(expr);
         case PLUS:
-            if (left instanceof Double && right instanceof Double) {
-                return (double) left + (double) right;
-            }
-
-            if (left instanceof String && right instanceof String) {
-                return (String) left + (String) right;
+            if (isNumeric(expr)) {
+                try {
+                    return add(expr);
+                } catch (NotANumber result) {
+                    return result.value;
+                }
             }
-            throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+            return add(expr.operator, evaluate(expr.left), evaluate(expr.right));
         default:
             break;
         }
@@ -142,42 +152,156 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // Assign 的表达式是
         // Assign(Token name, Expr value)
         // 顺着作用域链给 Environment 中的「变量」赋值
-        Token token = expr.name;
+        if (isNumeric(expr.value)) {
+            try {
+                return assignDouble(expr);
+            } catch (NotANumber result) {
+                return result.value;
+            }
+        }
         Object value = evaluate(expr.value);
-
-        environment.assign(token, value);
-
+        assign(expr, value);
         return value;
     }
 
+    private void assign(Expr.Assign expr, Object value) {
+        // depth 由 Resolver 算好，-1 是全局变量
+        if (expr.depth < 0) {
+            global(expr).value = value;
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
+    }
+
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
         // 从环境中得到 token 的 value
-        Object value = environment.get(expr.name);
-        return value;
+        if (expr.depth < 0) {
+            return global(expr).value;
+        }
+        return environment.getAt(expr.depth, expr.slot);
     }
 
     @Override
     public Object visitCallExpr(Expr.Call call) {
         // 执行函数
-        Object callee = evaluate(call.callee);
-        // 计算所有参数
-        List<Object> args = new ArrayList<>();
-        for (Expr arg : call.arguments) {
-            Object value = evaluate(arg);
-            args.add(value);
+        return call(evaluate(call.callee), call);
+    }
+
+    private Object call(Object callee, Expr.Call call) {
+        if (callee instanceof Native) {
+            return ((Native) callee).call(arguments(call), call.mark);
+        }
+        if (!(callee instanceof LoxCallable)) {
+            // 和别的运行时错误一样，参数先算完
+            arguments(call);
+            throw new RuntimeError(call.mark, "Can only call functions and classes.");
         }
         // call.callee 是一个 variable
         // 所以 evaluate 之后能得到环境中的函数
-        LoxFunction function = (LoxFunction) callee;
+        LoxCallable function = (LoxCallable) callee;
+
+        // 参数不多的时候算出来直接传过去，不放进数组
+        List<Expr> arguments = call.arguments;
+        switch (arguments.size()) {
+        case 0:
+            checkArity(function, 0, call);
+            return function.call0(this);
+        case 1: {
+            Object a = evaluate(arguments.get(0));
+            checkArity(function, 1, call);
+            return function.call1(this, a);
+        }
+        case 2: {
+            Object a = evaluate(arguments.get(0));
+            Object b = evaluate(arguments.get(1));
+            checkArity(function, 2, call);
+            return function.call2(this, a, b);
+        }
+        case 3: {
+            Object a = evaluate(arguments.get(0));
+            Object b = evaluate(arguments.get(1));
+            Object c = evaluate(arguments.get(2));
+            checkArity(function, 3, call);
+            return function.call3(this, a, b, c);
+        }
+        case 4: {
+            Object a = evaluate(arguments.get(0));
+            Object b = evaluate(arguments.get(1));
+            Object c = evaluate(arguments.get(2));
+            Object d = evaluate(arguments.get(3));
+            checkArity(function, 4, call);
+            return function.call4(this, a, b, c, d);
+        }
+        default:
+            Object[] args = arguments(call);
+            checkArity(function, args.length, call);
+            return function.call(this, args);
+        }
+    }
 
+    private Object[] arguments(Expr.Call call) {
+        // 计算所有参数，放进数组
+        Object[] args = new Object[call.arguments.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = evaluate(call.arguments.get(i));
+        }
+        return args;
+    }
+
+    private static void checkArity(LoxCallable function, int count, Expr.Call call) {
         // 运行时错误，判断给定的参数是不是等于定义时的参数个数
-        if (args.size() != function.arity()) {
-            throw new RuntimeError(call.mark,
-                    "Expected " + function.arity() + " arguments but got " + args.size() + ".");
+        if (count != function.arity()) {
+            throw new RuntimeError(call.mark, "Expected " + function.arity() + " arguments but got " + count + ".");
+        }
+    }
+
+    // 数学函数在数值通道里直接用 double 调用，参数和结果都不装箱
+    private double callDouble(Expr.Call call) {
+        Object callee = evaluate(call.callee);
+        int count = call.arguments.size();
+        if (callee instanceof Native.Unary && count == 1) {
+            Native.Unary function = (Native.Unary) callee;
+            return function.apply(nativeArgument(function, call, 0));
         }
-        return function.call(this, args);
+        if (callee instanceof Native.Binary && count == 2) {
+            Native.Binary function = (Native.Binary) callee;
+            double a = nativeArgument(function, call, 0);
+            return function.apply(a, nativeArgument(function, call, 1));
+        }
+        if (callee instanceof Native.Clock && count == 0) {
+            return ((Native.Clock) callee).apply();
+        }
+        if (callee instanceof LoxFunction && count <= 2) {
+            // 参数个数对的时候直接进 LoxFunction.invoke，不经过 call 和 call1、call2。
+            // 递归的每一层少两个 Java 栈帧，1 + f(n - 1) 这样的递归和通用路径能一样深
+            LoxFunction function = (LoxFunction) callee;
+            if (count == function.arity() && function.direct(this)) {
+                Object a = count > 0 ? evaluate(call.arguments.get(0)) : null;
+                Object b = count > 1 ? evaluate(call.arguments.get(1)) : null;
+                Environment environment = function.frame(this);
+                if (count > 0) {
+                    environment.slots[0] = a;
+                }
+                if (count > 1) {
+                    environment.slots[1] = b;
+                }
+                return number(function.invoke(this, environment));
+            }
+        }
+        return number(call(callee, call));
+    }
 
+    private double nativeArgument(Native function, Expr.Call call, int index) {
+        try {
+            return evaluateDouble(call.arguments.get(index));
+        } catch (NotANumber e) {
+            // 和通用的路径一样，后面的参数算完再报错
+            for (int i = index + 1; i < call.arguments.size(); i++) {
+                evaluate(call.arguments.get(i));
+            }
+            throw new RuntimeError(call.mark, function.numbersExpected());
+        }
     }
 
     @Override
@@ -186,9 +310,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Stmt thenBranch = stmt.thenBranch;
         Stmt elseBranch = stmt.elseBranch;
 
-        if (isTruthy(evaluate(condition))) {
+        if (evaluateBoolean(condition)) {
             execute(thenBranch);
-        } else {
+        } else if (elseBranch != null) {
             execute(elseBranch);
         }
         return null;
@@ -199,8 +323,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Expr condition = stmt.condition;
         Stmt body = stmt.body;
 
-        while (isTruthy(evaluate(condition))) {
+        while (evaluateBoolean(condition)) {
             execute(body);
+            if (returning) {
+                break;
+            }
         }
         return null;
     }
@@ -208,33 +335,69 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        out.println(stringify(value));
         return null;
     }
 
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
-        Object value = evaluate(stmt.expression);
+        if (stmt.expression instanceof Expr.Assign && isNumeric(((Expr.Assign) stmt.expression).value)) {
+            // 结果用不到，数字直接存进环境，不装箱
+            try {
+                assignDouble((Expr.Assign) stmt.expression);
+            } catch (NotANumber ignored) {
+                // 值已经存好了
+            }
+            return null;
+        }
+        evaluate(stmt.expression);
         return null;
     }
 
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
-        Object value = evaluate(stmt.expr);
-        throw new Return(value);
+        if (stmt.expr instanceof Expr.Call) {
+            // 尾调用：算好函数和参数就返回，Java 栈不会随着递归变深
+            Expr.Call call = (Expr.Call) stmt.expr;
+            Object callee = evaluate(call.callee);
+            Object[] args = arguments(call);
+            if (callee instanceof Native) {
+                // 内置函数不会再调用 Lox 函数，直接调用
+                returnValue = ((Native) callee).call(args, call.mark);
+                returning = true;
+                return null;
+            }
+            if (!(callee instanceof LoxFunction)) {
+                throw new RuntimeError(call.mark, "Can only call functions and classes.");
+            }
+            LoxFunction function = (LoxFunction) callee;
+            checkArity(function, args.length, call);
+            tailCallee = function;
+            tailArguments = args;
+            returnValue = TAIL_CALL;
+        } else {
+            returnValue = evaluate(stmt.expr);
+        }
+        returning = true;
+        return null;
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
         // 给 environment 中的变量赋值
-        String tokenName = stmt.name.lexeme;
         Expr expr = stmt.initializer;
-        if (expr == null) {
-            environment.define(tokenName, null);
-            return null;
+        Object value = null;
+        if (expr != null && stmt.slot >= 0 && isNumeric(expr)) {
+            try {
+                environment.setNumber(stmt.slot, evaluateDouble(expr));
+                return null;
+            } catch (NotANumber result) {
+                value = result.value;
+            }
+        } else if (expr != null) {
+            value = evaluate(expr);
         }
-        Object value = evaluate(expr);
-        environment.define(tokenName, value);
+        define(stmt.name, stmt.slot, value);
         return null;
     }
 
@@ -242,67 +405,354 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Void visitFunctionStmt(Stmt.Function function) {
         // 定义函数
         // 在当前环境中定义函数并且将
-        String name = function.name.lexeme;
         LoxFunction func = new LoxFunction(function, environment);
-        environment.define(name, func);
+        define(function.name, function.slot, func);
         return null;
     }
 
+    // 全局变量第一次按名字查找，之后用全局环境里按 Resolver 给的编号缓存的 Binding
+    private Environment.Binding global(Expr.Variable expr) {
+        return globals.binding(expr.slot, expr.name);
+    }
+
+    private Environment.Binding global(Expr.Assign expr) {
+        return globals.binding(expr.slot, expr.name);
+    }
+
+    private void define(Token name, int slot, Object value) {
+        // slot 为 -1 说明是全局变量
+        if (slot < 0) {
+            globals.define(name.lexeme, value);
+        } else {
+            environment.slots[slot] = value;
+        }
+    }
+
     public void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
-            for (Stmt statement : statements) {
-                execute(statement);
+            for (int i = 0; i < statements.size(); i++) {
+                execute(statements.get(i));
+                if (returning) {
+                    break;
+                }
             }
         } finally {
             this.environment = previous;
         }
     }
 
+    // 执行函数体，返回 return 的值；尾调用时返回 TAIL_CALL
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        executeBlock(declaration.body, environment);
+        if (!returning) {
+            return null;
+        }
+        Object value = returnValue;
+        returning = false;
+        returnValue = null;
+        return value;
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        if (stmt.locals == 0) {
+            // 没有自己的作用域，直接在当前环境里执行；按下标遍历，每次循环不用分配迭代器
+            List<Stmt> statements = stmt.statements;
+            for (int i = 0; i < statements.size(); i++) {
+                execute(statements.get(i));
+                if (returning) {
+                    break;
+                }
+            }
+            return null;
+        }
+        if (!stmt.pooled) {
+            executeBlock(stmt.statements, new Environment(environment, stmt.locals));
+            return null;
+        }
+        Environment frame = acquire(environment, stmt.locals);
+        try {
+            executeBlock(stmt.statements, frame);
+        } finally {
+            release(frame, stmt.locals);
+        }
         return null;
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double)
-            return;
+    // 借一个至少有 size 个 slot 的环境，外层换成 enclosing
+    Environment acquire(Environment enclosing, int size) {
+        if (frameTop == frames.length) {
+            frames = Arrays.copyOf(frames, frameTop * 2);
+        }
+        Environment frame = frames[frameTop];
+        if (frame == null || frame.slots.length < size) {
+            frame = new Environment(enclosing, size);
+            frames[frameTop] = frame;
+        } else {
+            frame.enclosing = enclosing;
+        }
+        frameTop++;
+        return frame;
+    }
 
-        throw new RuntimeError(operator, "Operands must be numbers.");
+    // 还回最近借出的环境。清掉用过的 slot，不留着已经没用的值
+    void release(Environment frame, int size) {
+        frameTop--;
+        Arrays.fill(frame.slots, 0, size, null);
+        frame.enclosing = null;
     }
 
-    private void checkNumberOperands(Token operator, Object operand) {
-        if (operand instanceof Double)
-            return;
+    /**
+     * 在只需要数字的地方求值，结果不装箱。
+     * 值不是数字时抛出 NotANumber，由调用者决定报错还是退回通用路径。
+     */
+    double evaluateDouble(Expr expr) {
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            if (variable.depth < 0) {
+                return number(global(variable).value);
+            }
+            Environment owner = environment.ancestor(variable.depth);
+            Object value = owner.slots[variable.slot];
+            if (value == Environment.NUMBER) {
+                return owner.numbers[variable.slot];
+            }
+            return number(value);
+        }
+        if (expr instanceof Expr.Literal) {
+            return number(((Expr.Literal) expr).value);
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+            case PLUS:
+                return add(binary);
+            case MINUS:
+            case SLASH:
+            case STAR:
+                return arithmetic(binary);
+            default:
+                break;
+            }
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateDouble(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.MINUS) {
+            return negate((Expr.Unary) expr);
+        } else if (expr instanceof Expr.Assign) {
+            return assignDouble((Expr.Assign) expr);
+        } else if (expr instanceof Expr.Call) {
+            return callDouble((Expr.Call) expr);
+        }
+        return number(evaluate(expr));
+    }
 
-        throw new RuntimeError(operator, "Operands must be numbers.");
+    /**
+     * 在条件里求值，比较的结果不装箱。
+     */
+    boolean evaluateBoolean(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return compare(binary);
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                return equality(binary);
+            default:
+                break;
+            }
+        } else if (expr instanceof Expr.Logical) {
+            // 条件里只关心真假，不需要 and / or 返回的值
+            Expr.Logical logical = (Expr.Logical) expr;
+            boolean left = evaluateBoolean(logical.left);
+            if (logical.operator.type == TokenType.OR) {
+                return left || evaluateBoolean(logical.right);
+            }
+            return left && evaluateBoolean(logical.right);
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateBoolean(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+            return !evaluateBoolean(((Expr.Unary) expr).right);
+        }
+        return isTruthy(evaluate(expr));
     }
 
-    private boolean isEqual(Object a, Object b) {
-        /**
-         * 当两者都为 null 的时候相等 调用 object equal 会调用子类重写的方法 equal
-         */
-        if (a == null && b == null) {
-            return true;
+    // 结果一定是数字的表达式，值可以走不装箱的通道
+    private static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return ((Expr.Literal) expr).value instanceof Double;
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+            case MINUS:
+            case SLASH:
+            case STAR:
+                return true;
+            case PLUS:
+                // 有一边是数字，另一边就只能是数字，否则本来就要报错
+                return isNumeric(binary.left) || isNumeric(binary.right);
+            default:
+                return false;
+            }
+        }
+        if (expr instanceof Expr.Grouping) {
+            return isNumeric(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
         }
+        return false;
+    }
 
-        if (a == null) {
-            return false;
+    private static double number(Object value) {
+        if (value instanceof Double) {
+            return (double) value;
         }
+        throw new NotANumber(value);
+    }
 
-        return a.equals(b);
+    // 左操作数不是数字时也要先把右边算完再报错，和原来的求值顺序一致
+    private double leftOperand(Expr.Binary expr) {
+        try {
+            return evaluateDouble(expr.left);
+        } catch (NotANumber e) {
+            evaluate(expr.right);
+            throw new RuntimeError(expr.operator, "Operands must be numbers.");
+        }
+    }
+
+    private double rightOperand(Expr.Binary expr) {
+        try {
+            return evaluateDouble(expr.right);
+        } catch (NotANumber e) {
+            throw new RuntimeError(expr.operator, "Operands must be numbers.");
+        }
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        double left = leftOperand(expr);
+        double right = rightOperand(expr);
+        switch (expr.operator.type) {
+        case MINUS:
+            return left - right;
+        case STAR:
+            return left * right;
+        default:
+            if (right == 0) {
+                throw new RuntimeError(expr.operator, "divide zero");
+            }
+            return left / right;
+        }
+    }
+
+    private boolean compare(Expr.Binary expr) {
+        double left = leftOperand(expr);
+        double right = rightOperand(expr);
+        switch (expr.operator.type) {
+        case GREATER:
+            return left > right;
+        case GREATER_EQUAL:
+            return left >= right;
+        case LESS:
+            return left < right;
+        default:
+            return left <= right;
+        }
     }
 
-    // 执行表达式
-    private Object evaluate(Expr expr) {
+    private boolean equality(Expr.Binary expr) {
+        boolean negate = expr.operator.type == TokenType.BANG_EQUAL;
+        if (!isNumeric(expr.left) && !isNumeric(expr.right)) {
+            return isEqual(evaluate(expr.left), evaluate(expr.right)) != negate;
+        }
+        // 和数字比较：两边都是数字时不装箱，否则按对象比较
+        double left;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (NotANumber e) {
+            return isEqual(e.value, evaluate(expr.right)) != negate;
+        }
+        double right;
+        try {
+            right = evaluateDouble(expr.right);
+        } catch (NotANumber e) {
+            return isEqual(left, e.value) != negate;
+        }
+        // 和 Double.equals 一样比较位
+        return (Double.doubleToLongBits(left) == Double.doubleToLongBits(right)) != negate;
+    }
+
+    // 加法在数值通道里：左边不是数字时可能是字符串拼接，算完以后用 NotANumber 带出去
+    private double add(Expr.Binary expr) {
+        double left;
+        try {
+            left = evaluateDouble(expr.left);
+        } catch (NotANumber e) {
+            throw new NotANumber(add(expr.operator, e.value, evaluate(expr.right)));
+        }
+        try {
+            return left + evaluateDouble(expr.right);
+        } catch (NotANumber e) {
+            throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+        }
+    }
+
+    private static Object add(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double) left + (double) right;
+        }
+
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+            // 不复制字符，要看内容的时候才拼起来
+            return LoxString.concat((CharSequence) left, (CharSequence) right, operator);
+        }
+        throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+    }
+
+    private double negate(Expr.Unary expr) {
+        try {
+            return -evaluateDouble(expr.right);
+        } catch (NotANumber e) {
+            throw new RuntimeError(expr.operator, "Operands must be numbers.");
+        }
+    }
+
+    // 赋值的值是数字时直接存进 numbers；不是数字时照常存好，再把值带出去
+    private double assignDouble(Expr.Assign expr) {
+        double value;
+        try {
+            value = evaluateDouble(expr.value);
+        } catch (NotANumber e) {
+            assign(expr, e.value);
+            throw e;
+        }
+        if (expr.depth < 0) {
+            global(expr).value = value;
+        } else {
+            environment.ancestor(expr.depth).setNumber(expr.slot, value);
+        }
+        return value;
+    }
+
+    private boolean isEqual(Object a, Object b) {
+        // nil 只等于 nil，字符串比内容，和其他执行方式用同一个
+        return LoxString.isEqual(a, b);
+    }
+
+    // 执行表达式，Profiler 覆盖它来计时；不用 -profile 的时候没有子类，JIT 照样内联
+    Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
     // 执行语句
-    private Object execute(Stmt stmt) {
+    Object execute(Stmt stmt) {
         return stmt.accept(this);
     }
 
@@ -326,7 +776,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return true;
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null)
             return "nil";
         if (object instanceof Double) {
@@ -341,6 +791,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     public void interpret(List<Stmt> statements) {
         try {
+            JitCode script = jit == null ? null : jit.compileScript(statements);
+            if (script != null) {
+                script.call(this, globals, new Object[0]);
+                return;
+            }
+            if (nodes != null) {
+                nodes.script(statements).call(globals, new Object[0]);
+                return;
+            }
             for (Stmt statement : statements) {
                 execute(statement);
             }
@@ -348,4 +807,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             MyLox.runtimeError(error);
         }
     }
+
+    Object run(List<Stmt> statements) {
+        // 给 CompiledScript 用：RuntimeError 交给调用的人处理，
+        // 最后一条语句是表达式的时候返回它的值，否则返回 nil
+        int last = statements.size() - 1;
+        for (int i = 0; i < last; i++) {
+            execute(statements.get(i));
+        }
+        if (last < 0) {
+            return null;
+        }
+        Stmt statement = statements.get(last);
+        if (statement instanceof Stmt.Expression) {
+            return evaluate(((Stmt.Expression) statement).expression);
+        }
+        execute(statement);
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,665 @@
+package app;
+
+import static app.jit.Opcodes.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.jit.ClassWriter;
+import app.jit.Label;
+import app.jit.MethodWriter;
+
+/**
+ * JitCompiler
+ *
+ * 把 Lox 函数和顶层脚本编译成 JVM 字节码，用 Lookup.defineHiddenClass 加载成隐藏类，
+ * 之后 LoxFunction.call 直接调用生成的代码，再由 JVM 的 C2 编译成机器码。
+ *
+ * 只被赋过数字的局部变量放在 double 类型的 JVM 局部变量里，算术不装箱；
+ * 其他值都是 Object。闭包捕获局部变量需要 Environment，
+ * 所以里面还声明了函数的函数（以及块里声明了函数的脚本）不编译，仍由解释器执行。
+ */
+final class JitCompiler {
+    // 调用这么多次才编译；带循环的函数第一次调用就编译
+    private static final int HOT_CALLS = 50;
+
+    // 编译不了，一直由解释器执行
+    static final JitCode INTERPRETED = (interpreter, closure, arguments) -> {
+        throw new IllegalStateException("Not compiled.");
+    };
+
+    private final Map<Stmt.Function, JitCode> functions = new IdentityHashMap<>();
+    private final Map<Stmt.Function, Integer> calls = new IdentityHashMap<>();
+    private final Map<List<Stmt>, JitCode> scripts = new IdentityHashMap<>();
+
+    JitCode codeFor(Stmt.Function declaration) {
+        // 还不热时返回 null
+        JitCode code = functions.get(declaration);
+        if (code != null) {
+            return code;
+        }
+        int count = calls.merge(declaration, 1, Integer::sum);
+        if (count < HOT_CALLS && !hasLoop(declaration.body)) {
+            return null;
+        }
+        code = define(new MethodCompiler(declaration.name.lexeme, declaration), declaration.body);
+        functions.put(declaration, code == null ? INTERPRETED : code);
+        calls.remove(declaration);
+        return functions.get(declaration);
+    }
+
+    JitCode compileScript(List<Stmt> statements) {
+        // 编译不了时返回 null
+        if (!scripts.containsKey(statements)) {
+            scripts.put(statements, define(new MethodCompiler("script", null), statements));
+        }
+        return scripts.get(statements);
+    }
+
+    private static boolean hasLoop(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.While) {
+                return true;
+            }
+            if (statement instanceof Stmt.Block && hasLoop(((Stmt.Block) statement).statements)) {
+                return true;
+            }
+            if (statement instanceof Stmt.If) {
+                Stmt.If branch = (Stmt.If) statement;
+                List<Stmt> arms = new ArrayList<>();
+                arms.add(branch.thenBranch);
+                if (branch.elseBranch != null) {
+                    arms.add(branch.elseBranch);
+                }
+                if (hasLoop(arms)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static JitCode define(MethodCompiler compiler, List<Stmt> body) {
+        byte[] bytes;
+        try {
+            bytes = compiler.generate(body);
+        } catch (Unsupported | IllegalStateException e) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            Class<?> type = lookup.lookupClass();
+            lookup.findStaticSetter(type, "K", Object[].class).invoke(compiler.constants.toArray());
+            return (JitCode) lookup.findConstructor(type, MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            // 生成的类有问题是编译器的 bug，不能悄悄退回解释执行
+            throw new IllegalStateException("JIT failed for " + compiler.className, e);
+        }
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // 值在操作数栈上的形式
+    private enum Type {
+        NUM, BOOL, OBJ
+    }
+
+    private static final class LocalVar {
+        final int index;
+        // 只被赋过数字，放在 double 局部变量里
+        boolean num;
+
+        LocalVar(int index, boolean num) {
+            this.index = index;
+            this.num = num;
+        }
+    }
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ENVIRONMENT = "app/Environment";
+    private static final String TOKEN = "app/Token";
+    private static final String RUNTIME = "app/JitRuntime";
+    private static final String CALL = "(Lapp/Interpreter;Lapp/Environment;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    // 生成方法 call(interpreter, closure, arguments) 里固定的局部变量
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int CLOSURE_LOCAL = 2;
+    private static final int ARGUMENTS_LOCAL = 3;
+
+    /**
+     * 编译一个函数或者脚本。局部变量的类型先乐观地当作数字，
+     * 生成代码时发现赋了别的值就改成 Object 再生成一遍，直到不再变化。
+     */
+    private static final class MethodCompiler implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
+        final String className;
+        // 为 null 时编译的是顶层脚本
+        final Stmt.Function function;
+        final List<Object> constants = new ArrayList<>();
+
+        // 每个作用域（函数或者块）的局部变量，下标就是 Resolver 算的 slot
+        private final Map<Object, LocalVar[]> frames = new IdentityHashMap<>();
+        private final List<LocalVar[]> scopes = new ArrayList<>();
+        private int nextLocal = ARGUMENTS_LOCAL + 1;
+        private boolean changed;
+        private MethodWriter m;
+
+        MethodCompiler(String name, Stmt.Function function) {
+            this.className = "app/Jit$" + name;
+            this.function = function;
+        }
+
+        byte[] generate(List<Stmt> body) {
+            ClassWriter writer;
+            do {
+                changed = false;
+                constants.clear();
+                scopes.clear();
+                writer = new ClassWriter(ACC_FINAL | ACC_SUPER, className, OBJECT, "app/JitCode");
+                writer.field(ACC_STATIC, "K", "[Ljava/lang/Object;");
+
+                MethodWriter init = writer.method(0, "<init>", "()V");
+                init.varInsn(ALOAD, 0);
+                init.methodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V");
+                init.insn(RETURN);
+
+                m = writer.method(ACC_PUBLIC, "call", CALL);
+                if (function != null) {
+                    LocalVar[] frame = frame(function, function.locals);
+                    for (int i = 0; i < function.params.size(); i++) {
+                        // 参数可以是任何值
+                        LocalVar param = local(frame, i, false);
+                        m.varInsn(ALOAD, ARGUMENTS_LOCAL);
+                        m.push(i);
+                        m.insn(AALOAD);
+                        m.varInsn(ASTORE, param.index);
+                    }
+                    scopes.add(frame);
+                }
+                for (Stmt statement : body) {
+                    statement.accept(this);
+                }
+                m.insn(ACONST_NULL);
+                m.insn(ARETURN);
+            } while (changed);
+            return writer.toByteArray();
+        }
+
+        private LocalVar[] frame(Object owner, int size) {
+            return frames.computeIfAbsent(owner, key -> new LocalVar[size]);
+        }
+
+        private LocalVar local(LocalVar[] frame, int slot, boolean num) {
+            if (frame[slot] == null) {
+                // double 占两个位置，类型变了也不用重新分配
+                frame[slot] = new LocalVar(nextLocal, num);
+                nextLocal += 2;
+            }
+            return frame[slot];
+        }
+
+        private LocalVar resolve(int depth, int slot) {
+            // 不在这个函数里时返回 null，要到 closure 里找
+            int level = scopes.size() - 1 - depth;
+            if (level < 0) {
+                return null;
+            }
+            return scopes.get(level)[slot];
+        }
+
+        private void demote(LocalVar local) {
+            local.num = false;
+            changed = true;
+        }
+
+        private Type generate(Expr expr) {
+            return expr.accept(this);
+        }
+
+        private void pushConstant(Object value, String type) {
+            int index = -1;
+            for (int i = 0; i < constants.size(); i++) {
+                if (constants.get(i) == value) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                index = constants.size();
+                constants.add(value);
+            }
+            m.fieldInsn(GETSTATIC, className, "K", "[Ljava/lang/Object;");
+            m.push(index);
+            m.insn(AALOAD);
+            m.typeInsn(CHECKCAST, type);
+        }
+
+        private void loadGlobals() {
+            m.varInsn(ALOAD, INTERPRETER_LOCAL);
+            m.fieldInsn(GETFIELD, "app/Interpreter", "globals", "Lapp/Environment;");
+        }
+
+        private void pop(Type type) {
+            m.insn(type == Type.NUM ? POP2 : POP);
+        }
+
+        private void box(Type type) {
+            if (type == Type.NUM) {
+                m.methodInsn(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+            } else if (type == Type.BOOL) {
+                m.methodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+            }
+        }
+
+        private void toNumber(Type type, Token operator) {
+            if (type == Type.NUM) {
+                return;
+            }
+            box(type);
+            pushConstant(operator, TOKEN);
+            m.methodInsn(INVOKESTATIC, RUNTIME, "number", "(Ljava/lang/Object;Lapp/Token;)D");
+        }
+
+        private void truthy(Type type) {
+            if (type == Type.NUM) {
+                m.methodInsn(INVOKESTATIC, RUNTIME, "isTruthy", "(D)Z");
+            } else if (type == Type.OBJ) {
+                m.methodInsn(INVOKESTATIC, RUNTIME, "isTruthy", "(Ljava/lang/Object;)Z");
+            }
+        }
+
+        private void numberOperands(Type left, Type right, Token operator) {
+            // 栈上是 left right，两个都求完值以后才检查，和解释器一样
+            toNumber(right, operator);
+            if (left != Type.NUM) {
+                m.insn(DUP2_X1);
+                m.insn(POP2);
+                toNumber(left, operator);
+                m.insn(DUP2_X2);
+                m.insn(POP2);
+            }
+        }
+
+        private void boxOperands(Type left, Type right) {
+            box(right);
+            if (left == Type.NUM) {
+                m.insn(DUP_X2);
+                m.insn(POP);
+                box(left);
+                m.insn(SWAP);
+            } else if (left == Type.BOOL) {
+                m.insn(SWAP);
+                box(left);
+                m.insn(SWAP);
+            }
+        }
+
+        private void compareJump(TokenType operator, Label whenFalse) {
+            // 栈上是两个 double，比较不成立时跳转；有 NaN 时比较都不成立
+            switch (operator) {
+            case LESS:
+                m.insn(DCMPG);
+                m.jump(IFGE, whenFalse);
+                break;
+            case LESS_EQUAL:
+                m.insn(DCMPG);
+                m.jump(IFGT, whenFalse);
+                break;
+            case GREATER:
+                m.insn(DCMPL);
+                m.jump(IFLE, whenFalse);
+                break;
+            default:
+                m.insn(DCMPL);
+                m.jump(IFLT, whenFalse);
+                break;
+            }
+        }
+
+        private static boolean isComparison(TokenType type) {
+            return type == TokenType.LESS || type == TokenType.LESS_EQUAL || type == TokenType.GREATER
+                    || type == TokenType.GREATER_EQUAL;
+        }
+
+        private void branchIfFalse(Expr condition, Label whenFalse) {
+            while (condition instanceof Expr.Grouping) {
+                condition = ((Expr.Grouping) condition).expression;
+            }
+            if (condition instanceof Expr.Binary && isComparison(((Expr.Binary) condition).operator.type)) {
+                Expr.Binary binary = (Expr.Binary) condition;
+                Type left = generate(binary.left);
+                Type right = generate(binary.right);
+                numberOperands(left, right, binary.operator);
+                compareJump(binary.operator.type, whenFalse);
+                return;
+            }
+            if (condition instanceof Expr.Logical && ((Expr.Logical) condition).operator.type == TokenType.AND) {
+                branchIfFalse(((Expr.Logical) condition).left, whenFalse);
+                branchIfFalse(((Expr.Logical) condition).right, whenFalse);
+                return;
+            }
+            truthy(generate(condition));
+            m.jump(IFEQ, whenFalse);
+        }
+
+        @Override
+        public Type visitLiteralExpr(Expr.Literal expr) {
+            Object value = expr.value;
+            if (value instanceof Double) {
+                m.push((double) value);
+                return Type.NUM;
+            }
+            if (value instanceof Boolean) {
+                m.push((boolean) value ? 1 : 0);
+                return Type.BOOL;
+            }
+            if (value instanceof String) {
+                m.push((String) value);
+            } else {
+                m.insn(ACONST_NULL);
+            }
+            return Type.OBJ;
+        }
+
+        @Override
+        public Type visitGroupingExpr(Expr.Grouping expr) {
+            return generate(expr.expression);
+        }
+
+        @Override
+        public Type visitVariableExpr(Expr.Variable expr) {
+            if (expr.depth < 0) {
+                pushConstant(expr, "app/Expr$Variable");
+                loadGlobals();
+                m.methodInsn(INVOKESTATIC, RUNTIME, "global", "(Lapp/Expr$Variable;Lapp/Environment;)Ljava/lang/Object;");
+                return Type.OBJ;
+            }
+            LocalVar local = resolve(expr.depth, expr.slot);
+            if (local == null) {
+                m.varInsn(ALOAD, CLOSURE_LOCAL);
+                m.push(expr.depth - scopes.size());
+                m.push(expr.slot);
+                m.methodInsn(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)Ljava/lang/Object;");
+                return Type.OBJ;
+            }
+            if (local.num) {
+                m.varInsn(DLOAD, local.index);
+                return Type.NUM;
+            }
+            m.varInsn(ALOAD, local.index);
+            return Type.OBJ;
+        }
+
+        @Override
+        public Type visitAssignExpr(Expr.Assign expr) {
+            Type value = generate(expr.value);
+            if (expr.depth < 0) {
+                box(value);
+                m.insn(DUP);
+                loadGlobals();
+                pushConstant(expr, "app/Expr$Assign");
+                m.methodInsn(INVOKESTATIC, RUNTIME, "assignGlobal", "(Ljava/lang/Object;Lapp/Environment;Lapp/Expr$Assign;)V");
+                return Type.OBJ;
+            }
+            LocalVar local = resolve(expr.depth, expr.slot);
+            if (local == null) {
+                box(value);
+                m.insn(DUP);
+                m.varInsn(ALOAD, CLOSURE_LOCAL);
+                m.push(expr.depth - scopes.size());
+                m.push(expr.slot);
+                m.methodInsn(INVOKESTATIC, RUNTIME, "assignAt", "(Ljava/lang/Object;Lapp/Environment;II)V");
+                return Type.OBJ;
+            }
+            if (local.num && value == Type.NUM) {
+                m.insn(DUP2);
+                m.varInsn(DSTORE, local.index);
+                return Type.NUM;
+            }
+            if (local.num) {
+                demote(local);
+            }
+            box(value);
+            m.insn(DUP);
+            m.varInsn(ASTORE, local.index);
+            return Type.OBJ;
+        }
+
+        @Override
+        public Type visitLogicalExpr(Expr.Logical expr) {
+            // 结果是某一边的值，不一定是布尔
+            Label end = new Label();
+            box(generate(expr.left));
+            m.insn(DUP);
+            truthy(Type.OBJ);
+            m.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+            m.insn(POP);
+            box(generate(expr.right));
+            m.mark(end);
+            return Type.OBJ;
+        }
+
+        @Override
+        public Type visitUnaryExpr(Expr.Unary expr) {
+            Type right = generate(expr.right);
+            if (expr.operator.type == TokenType.MINUS) {
+                toNumber(right, expr.operator);
+                m.insn(DNEG);
+                return Type.NUM;
+            }
+            truthy(right);
+            m.push(1);
+            m.insn(IXOR);
+            return Type.BOOL;
+        }
+
+        @Override
+        public Type visitBinaryExpr(Expr.Binary expr) {
+            Type left = generate(expr.left);
+            Type right = generate(expr.right);
+            Token operator = expr.operator;
+            switch (operator.type) {
+            case MINUS:
+                numberOperands(left, right, operator);
+                m.insn(DSUB);
+                return Type.NUM;
+            case STAR:
+                numberOperands(left, right, operator);
+                m.insn(DMUL);
+                return Type.NUM;
+            case SLASH:
+                numberOperands(left, right, operator);
+                if (expr.right instanceof Expr.Literal && ((Expr.Literal) expr.right).value instanceof Double
+                        && (double) ((Expr.Literal) expr.right).value != 0) {
+                    // 除数是非零常量，不用检查
+                    m.insn(DDIV);
+                } else {
+                    pushConstant(operator, TOKEN);
+                    m.methodInsn(INVOKESTATIC, RUNTIME, "divide", "(DDLapp/Token;)D");
+                }
+                return Type.NUM;
+            case PLUS:
+                if (left == Type.NUM && right == Type.NUM) {
+                    m.insn(DADD);
+                    return Type.NUM;
+                }
+                boxOperands(left, right);
+                pushConstant(operator, TOKEN);
+                m.methodInsn(INVOKESTATIC, RUNTIME, "add",
+                        "(Ljava/lang/Object;Ljava/lang/Object;Lapp/Token;)Ljava/lang/Object;");
+                return Type.OBJ;
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                if (left == Type.NUM && right == Type.NUM) {
+                    m.methodInsn(INVOKESTATIC, RUNTIME, "isEqual", "(DD)Z");
+                } else {
+                    boxOperands(left, right);
+                    m.methodInsn(INVOKESTATIC, RUNTIME, "isEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+                }
+                if (operator.type == TokenType.BANG_EQUAL) {
+                    m.push(1);
+                    m.insn(IXOR);
+                }
+                return Type.BOOL;
+            default:
+                numberOperands(left, right, operator);
+                Label no = new Label();
+                Label end = new Label();
+                compareJump(operator.type, no);
+                m.push(1);
+                m.jump(GOTO, end);
+                m.mark(no);
+                m.push(0);
+                m.mark(end);
+                return Type.BOOL;
+            }
+        }
+
+        @Override
+        public Type visitCallExpr(Expr.Call expr) {
+            call(expr, "call");
+            return Type.OBJ;
+        }
+
+        // 算出函数和参数，交给 JitRuntime 里的 call 或者 tailCall
+        private void call(Expr.Call expr, String method) {
+            box(generate(expr.callee));
+            m.push(expr.arguments.size());
+            m.typeInsn(ANEWARRAY, OBJECT);
+            for (int i = 0; i < expr.arguments.size(); i++) {
+                m.insn(DUP);
+                m.push(i);
+                box(generate(expr.arguments.get(i)));
+                m.insn(AASTORE);
+            }
+            pushConstant(expr.mark, TOKEN);
+            m.varInsn(ALOAD, INTERPRETER_LOCAL);
+            m.methodInsn(INVOKESTATIC, RUNTIME, method,
+                    "(Ljava/lang/Object;[Ljava/lang/Object;Lapp/Token;Lapp/Interpreter;)Ljava/lang/Object;");
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            pop(generate(stmt.expression));
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            box(generate(stmt.expression));
+            m.varInsn(ALOAD, INTERPRETER_LOCAL);
+            m.methodInsn(INVOKESTATIC, RUNTIME, "print", "(Ljava/lang/Object;Lapp/Interpreter;)V");
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            if (scopes.isEmpty()) {
+                // 全局变量
+                loadGlobals();
+                m.push(stmt.name.lexeme);
+                if (stmt.initializer != null) {
+                    box(generate(stmt.initializer));
+                } else {
+                    m.insn(ACONST_NULL);
+                }
+                m.methodInsn(INVOKEVIRTUAL, ENVIRONMENT, "define", "(Ljava/lang/String;Ljava/lang/Object;)V");
+                return null;
+            }
+            LocalVar local = local(scopes.get(scopes.size() - 1), stmt.slot, stmt.initializer != null);
+            Type value = Type.OBJ;
+            if (stmt.initializer != null) {
+                value = generate(stmt.initializer);
+            } else {
+                m.insn(ACONST_NULL);
+            }
+            if (local.num && value == Type.NUM) {
+                m.varInsn(DSTORE, local.index);
+                return null;
+            }
+            if (local.num) {
+                demote(local);
+            }
+            box(value);
+            m.varInsn(ASTORE, local.index);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            // locals 为 0 的块没有自己的作用域
+            if (stmt.locals == 0) {
+                for (Stmt statement : stmt.statements) {
+                    statement.accept(this);
+                }
+                return null;
+            }
+            scopes.add(frame(stmt, stmt.locals));
+            for (Stmt statement : stmt.statements) {
+                statement.accept(this);
+            }
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            Label elseBranch = new Label();
+            branchIfFalse(stmt.condition, elseBranch);
+            stmt.thenBranch.accept(this);
+            if (stmt.elseBranch == null) {
+                m.mark(elseBranch);
+                return null;
+            }
+            Label end = new Label();
+            m.jump(GOTO, end);
+            m.mark(elseBranch);
+            stmt.elseBranch.accept(this);
+            m.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            Label start = new Label();
+            Label end = new Label();
+            m.mark(start);
+            branchIfFalse(stmt.condition, end);
+            stmt.body.accept(this);
+            m.jump(GOTO, start);
+            m.mark(end);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            if (stmt.expr instanceof Expr.Call) {
+                // 尾调用，返回 Interpreter.TAIL_CALL，由 LoxFunction.call 接着调用
+                call((Expr.Call) stmt.expr, "tailCall");
+            } else {
+                box(generate(stmt.expr));
+            }
+            m.insn(ARETURN);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            if (function != null || !scopes.isEmpty()) {
+                // 内层函数要捕获局部变量，这里的局部变量不在 Environment 里
+                throw new Unsupported("Nested function " + stmt.name.lexeme + ".");
+            }
+            m.varInsn(ALOAD, INTERPRETER_LOCAL);
+            pushConstant(stmt, "app/Stmt$Function");
+            m.methodInsn(INVOKESTATIC, RUNTIME, "defineFunction", "(Lapp/Interpreter;Lapp/Stmt$Function;)V");
+            return null;
+        }
+    }
+}
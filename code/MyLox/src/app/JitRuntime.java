@@ -0,0 +1,117 @@
+package app;
+
+// JitCompiler 生成的类都实现这个接口，closure 是函数定义时的环境
+interface JitCode {
+    Object call(Interpreter interpreter, Environment closure, Object[] arguments);
+}
+
+/**
+ * JitRuntime
+ *
+ * JitCompiler 生成的代码调用的辅助方法。语义和 Interpreter 里对应的部分保持一致，
+ * 报错信息也一样。
+ */
+final class JitRuntime {
+    private JitRuntime() {
+    }
+
+    static double number(Object value, Token operator) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    static double divide(double left, double right, Token operator) {
+        if (right == 0) {
+            throw new RuntimeError(operator, "divide zero");
+        }
+        return left / right;
+    }
+
+    static Object add(Object left, Object right, Token operator) {
+        if (left instanceof Double && right instanceof Double) {
+            return (double) left + (double) right;
+        }
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+            return LoxString.concat((CharSequence) left, (CharSequence) right, operator);
+        }
+        throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        return LoxString.isEqual(a, b);
+    }
+
+    static boolean isEqual(double a, double b) {
+        // 和 Double.equals 一样：NaN 等于自己，0.0 不等于 -0.0
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    static boolean isTruthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Double) {
+            return (double) value != 0;
+        }
+        if (value instanceof Boolean) {
+            return (boolean) value;
+        }
+        return true;
+    }
+
+    static boolean isTruthy(double value) {
+        return value != 0;
+    }
+
+    static void print(Object value, Interpreter interpreter) {
+        interpreter.out.println(Interpreter.stringify(value));
+    }
+
+    static Object call(Object callee, Object[] arguments, Token paren, Interpreter interpreter) {
+        if (callee instanceof Native) {
+            return ((Native) callee).call(arguments, paren);
+        }
+        return function(callee, arguments, paren).call(interpreter, arguments);
+    }
+
+    static Object tailCall(Object callee, Object[] arguments, Token paren, Interpreter interpreter) {
+        if (callee instanceof Native) {
+            // 内置函数不会再调用 Lox 函数，直接调用
+            return ((Native) callee).call(arguments, paren);
+        }
+        interpreter.tailCallee = function(callee, arguments, paren);
+        interpreter.tailArguments = arguments;
+        return Interpreter.TAIL_CALL;
+    }
+
+    private static LoxFunction function(Object callee, Object[] arguments, Token paren) {
+        if (!(callee instanceof LoxFunction)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxFunction function = (LoxFunction) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren,
+                    "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+        }
+        return function;
+    }
+
+    static void assignAt(Object value, Environment environment, int depth, int slot) {
+        environment.assignAt(depth, slot, value);
+    }
+
+    // 全局变量的读写用全局环境里按编号缓存的 Binding，和 Interpreter 共用
+    static Object global(Expr.Variable expr, Environment globals) {
+        return globals.binding(expr.slot, expr.name).value;
+    }
+
+    static void assignGlobal(Object value, Environment globals, Expr.Assign expr) {
+        globals.binding(expr.slot, expr.name).value = value;
+    }
+
+    static void defineFunction(Interpreter interpreter, Stmt.Function declaration) {
+        interpreter.globals.define(declaration.name.lexeme, new LoxFunction(declaration, interpreter.globals));
+    }
+}
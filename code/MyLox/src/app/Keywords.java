@@ -0,0 +1,100 @@
+package app;
+
+import static app.TokenType.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keywords
+ *
+ * 关键字的完美哈希。哈希只用长度、第一个和最后一个字符，
+ * 类加载的时候找一个让所有关键字都不冲突的乘数，表里每个位置最多放一个关键字。
+ * 查找时直接和源码里的那一段字符比较，不用先截出字符串。
+ */
+final class Keywords {
+    private static final String[] NAMES = {
+        "and", "class", "else", "elif", "false", "for", "fun", "if", "nil", "or",
+        "print", "return", "super", "this", "true", "var", "while",
+        // 中文编程
+        "并且", "类", "否则", "假", "循环", "函数", "如果", "空", "或者", "输出",
+        "返回", "继承", "这个", "真", "声明", "当",
+    };
+    private static final TokenType[] TYPES = {
+        AND, CLASS, ELSE, ELIF, FALSE, FOR, FUN, IF, NIL, OR,
+        PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
+        并且, 类, 否则, 假, 循环, 函数, 如果, 空, 或者, 输出,
+        返回, 继承, 这个, 真, 声明, 当,
+    };
+
+    // 表的大小是 2 的幂，大约是关键字个数的四倍，容易找到不冲突的乘数
+    private static final int BITS = 7;
+    private static final char[][] names = new char[1 << BITS][];
+    private static final TokenType[] types = new TokenType[1 << BITS];
+    private static final int MULTIPLIER;
+    private static final int MAX_LENGTH;
+
+    static {
+        int longest = 0;
+        for (String name : NAMES) {
+            longest = Math.max(longest, name.length());
+        }
+        MAX_LENGTH = longest;
+        MULTIPLIER = search();
+        for (int i = 0; i < NAMES.length; i++) {
+            char[] name = NAMES[i].toCharArray();
+            int slot = hash(name.length, name[0], name[name.length - 1], MULTIPLIER);
+            names[slot] = name;
+            types[slot] = TYPES[i];
+        }
+    }
+
+    private static int hash(int length, char first, char last, int multiplier) {
+        return ((first * 31 + last) * 31 + length) * multiplier >>> (32 - BITS);
+    }
+
+    private static int search() {
+        // 从黄金分割数开始试奇数乘数，直到所有关键字落在不同的位置
+        for (int multiplier = 0x9E3779B1; ; multiplier += 2) {
+            boolean[] used = new boolean[1 << BITS];
+            boolean perfect = true;
+            for (String name : NAMES) {
+                int slot = hash(name.length(), name.charAt(0), name.charAt(name.length() - 1), multiplier);
+                if (used[slot]) {
+                    perfect = false;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (perfect) {
+                return multiplier;
+            }
+        }
+    }
+
+    static TokenType lookup(char[] chars, int from, int length) {
+        // 不是关键字就是 IDENTIFIER
+        if (length > MAX_LENGTH) {
+            return IDENTIFIER;
+        }
+        int slot = hash(length, chars[from], chars[from + length - 1], MULTIPLIER);
+        char[] name = names[slot];
+        if (name == null || name.length != length) {
+            return IDENTIFIER;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != chars[from + i]) {
+                return IDENTIFIER;
+            }
+        }
+        return types[slot];
+    }
+
+    static Map<String, TokenType> asMap() {
+        Map<String, TokenType> map = new HashMap<>();
+        for (int i = 0; i < NAMES.length; i++) {
+            map.put(NAMES[i], TYPES[i]);
+        }
+        return map;
+    }
+}
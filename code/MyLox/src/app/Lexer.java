@@ -0,0 +1,95 @@
+package app;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Lexer
+ *
+ * 词法分析器共用的部分：从 Reader 里一块一块地读字符，TokenBuffer 要 token
+ * 的时候才调用 scan 往下扫描。token 只记下在源码里的位置，buffer 里只留着
+ * 还可能用到的那些字符，整个源文件不用同时放在内存里；
+ * 源码本来就是字符串的话直接在上面扫描。
+ */
+abstract class Lexer {
+    private final Reader reader;
+    final TokenBuffer tokens = new TokenBuffer(this);
+    // 词法错误和解析错误都报到这里
+    ErrorReporter errors = ErrorReporter.STDERR;
+    // buffer[0] 在源码里的偏移，还没扫描的字符在 buffer[position, limit) 里
+    char[] buffer;
+    int offset = 0;
+    int position = 0;
+    int limit = 0;
+    private boolean drained = false;
+    // 当前 token 在源码里的起始位置
+    int start = 0;
+    int line = 1;
+
+    Lexer(Reader reader) {
+        this(reader, 1);
+    }
+
+    Lexer(Reader reader, int line) {
+        // 从源码中间开始扫描的时候，line 是开头所在的行
+        this.reader = reader;
+        this.buffer = new char[8192];
+        this.line = line;
+    }
+
+    Lexer(String source) {
+        this.reader = null;
+        this.buffer = source.toCharArray();
+        this.limit = buffer.length;
+        this.drained = true;
+    }
+
+    /** 扫描出下一个 token 放进 tokens，到了末尾就放一个 EOF */
+    abstract void scan();
+
+    TokenBuffer tokens() {
+        return tokens;
+    }
+
+    String text(int start, int length) {
+        return new String(buffer, start - offset, length);
+    }
+
+    boolean fill(int count) {
+        // 保证 buffer 里至少还有 count 个字符，读到文件末尾也不够就返回 false
+        if (limit - position >= count) {
+            return true;
+        }
+        if (drained) {
+            return false;
+        }
+        // 当前 token 和 TokenBuffer 还留着的 token 的字符要保留
+        int keep = Math.min(start, tokens.keep()) - offset;
+        System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+        offset += keep;
+        position -= keep;
+        limit -= keep;
+        try {
+            while (limit - position < count && !drained) {
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    drained = true;
+                } else {
+                    limit += read;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return limit - position >= count;
+    }
+
+    boolean isAtEnd() {
+        return !fill(1);
+    }
+}
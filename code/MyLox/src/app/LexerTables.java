@@ -0,0 +1,397 @@
+package app;
+
+import static app.TokenType.*;
+
+/**
+ * LexerTables
+ *
+ * 由 tools/GenerateLexer 生成，不要手改。
+ * 90 个状态，38 个字符类。
+ */
+final class LexerTables {
+    static final int CLASS_COUNT = 38;
+    // 下面的状态都是行的起始下标
+    static final int DEAD = 0;
+    static final int START = 38;
+    // 不小于这个的都是接受状态
+    static final int ACCEPTING = 76;
+
+    // 字符所属的类，下标 128 是所有 ASCII 以外的字符
+    static final char[] CLASSES = (
+        "\000\000\000\000\000\000\000\000\000\001\002\000\000\001\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\001\003\004\000\000\000\000\000\005\006\007\010\011\012\013\014"
+        + "\015\015\015\015\015\015\015\015\015\015\000\016\017\020\021\000"
+        + "\000\022\022\022\022\022\022\022\022\022\022\022\022\022\022\022"
+        + "\022\022\022\022\022\022\022\022\022\022\022\000\000\000\000\022"
+        + "\000\023\022\024\025\026\027\022\030\031\022\022\032\022\033\034"
+        + "\035\022\036\037\040\041\042\043\022\022\022\044\000\045\000\000"
+        + "\000").toCharArray();
+
+    // NEXT[state + class] 是下一个状态
+    static final char[] NEXT = (
+        "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\114\114\162\230\276\344\u010a\u0130\u0156"
+        + "\u017c\u01a2\u01c8\u01ee\u0214\u023a\u0260\u0286\u02ac\u02d2\u02f8\u02ac\u031e\u0344\u02ac\u036a"
+        + "\u02ac\u0390\u03b6\u03dc\u0402\u0428\u044e\u02ac\u0474\u049a\u04c0\u04e6\000\114\114\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\u050c\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\230\230\230\230\u0532\230\230\230"
+        + "\230\230\230\230\230\230\230\230\230\230\230\230\230\230\230\230"
+        + "\230\230\230\230\230\230\230\230\230\230\230\230\230\230\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\u0558\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u057e\000\u01ee\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\u05a4\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\u05ca\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\u05f0\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0616\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u063c\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0662\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u0688\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u06ae\u02ac\u02ac\u02ac\u02ac\u06d4\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u06fa\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0720\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u0746\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u076c\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u0792\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u07b8\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u07de\u02ac\u02ac\u02ac\u02ac\u02ac\u0804\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u082a\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u0850\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\u0558\u0558\000\u0558\u0558\u0558\u0558\u0558"
+        + "\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558"
+        + "\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\u0558\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u0876\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u089c\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u08c2"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u08e8\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u090e\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u0934\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u095a\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0980"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u09a6\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u09cc\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u09f2\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u0a18\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0a3e\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u0a64\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0a8a\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0ab0\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u0876\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u0ad6\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u0afc"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u0b22\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u0b48\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0b6e\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u0b94\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u0bba\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0be0\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u0c06\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0c2c\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u0c52\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u0c78\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0c9e\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u0cc4\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0cea\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac"
+        + "\u02ac\u02ac\u0d10\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac"
+        + "\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000\000\000"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u0d36"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000"
+        + "\000\000\000\000\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000"
+        + "\000\000\000\000\000\000\000\000\000\000\000\000\000\u02ac\000\000"
+        + "\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\000\000\000\000\000\000\000\000\000\000\000\000"
+        + "\000\000\000\u02ac\000\000\000\000\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac"
+        + "\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\u02ac\000\000").toCharArray();
+
+    // ACCEPT[state / CLASS_COUNT] 是接受的规则编号加一，0 表示不是接受状态
+    static final char[] ACCEPT = (
+        "\000\000\001\016\027\003\004\014\012\007\011\010\015\030\013\022"
+        + "\020\024\053\053\053\053\053\053\053\053\053\053\053\053\053\053"
+        + "\005\006\017\026\002\031\023\021\025\053\053\053\053\053\053\041"
+        + "\053\043\053\053\053\053\053\053\053\030\032\053\053\053\053\037"
+        + "\040\042\053\053\053\053\053\051\053\053\035\034\053\053\053\053"
+        + "\047\050\053\033\036\044\053\046\052\045").toCharArray();
+
+    // 每条规则生成的 token，null 表示丢掉
+    static final TokenType[] TOKENS = {
+        null,
+        null,
+        LEFT_PAREN,
+        RIGHT_PAREN,
+        LEFT_BRACE,
+        RIGHT_BRACE,
+        COMMA,
+        DOT,
+        MINUS,
+        PLUS,
+        SEMICOLON,
+        STAR,
+        SLASH,
+        BANG,
+        BANG_EQUAL,
+        EQUAL,
+        EQUAL_EQUAL,
+        LESS,
+        LESS_EQUAL,
+        GREATER,
+        GREATER_EQUAL,
+        STRING,
+        null,
+        NUMBER,
+        NUMBER,
+        AND,
+        CLASS,
+        ELSE,
+        ELIF,
+        FALSE,
+        FOR,
+        FUN,
+        IF,
+        NIL,
+        OR,
+        PRINT,
+        RETURN,
+        SUPER,
+        THIS,
+        TRUE,
+        VAR,
+        WHILE,
+        IDENTIFIER,
+    };
+
+    // 匹配到以后要报的错
+    static final String[] ERRORS = {
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        "Unterminated string.",
+        null,
+        "Unexpected character '.'",
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+    };
+
+    // 能匹配换行的规则，要数一下行号
+    static final boolean[] LINES = {
+        true,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        true,
+        true,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+        false,
+    };
+}
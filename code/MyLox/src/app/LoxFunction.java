@@ -1,15 +1,43 @@
 package app;
 
-import java.util.List;
-
+/**
+ * LoxCallable
+ *
+ * 能调用的值。参数个数由调用的地方检查过再调用。
+ * 参数不超过四个的时候用 call0 到 call4，参数直接传进来，不用先放进数组；
+ * 默认实现放进数组再调用 call。
+ */
 interface LoxCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
+
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, new Object[0]);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[] { a });
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[] { a, b });
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[] { a, b, c });
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, new Object[] { a, b, c, d });
+    }
 }
 
 class LoxFunction implements LoxCallable {
     private final Stmt.Function declaration;
     private final Environment closure;
+    // JIT 编译好的代码，JitCompiler.INTERPRETED 表示编译不了
+    private JitCode code = null;
 
     LoxFunction(Stmt.Function declaration, Environment closure) {
         this.declaration = declaration;
@@ -27,18 +55,124 @@ class LoxFunction implements LoxCallable {
         return "<fn " + declaration.name.lexeme + ">";
     }
 
+    // 树遍历解释器直接执行函数体的时候，参数按顺序放进新环境前面的 slot，不经过数组。
+    // 用 JIT 或者 Node 树的时候它们要的是数组，还是走 call
+    @Override
+    public Object call0(Interpreter interpreter) {
+        if (!direct(interpreter)) {
+            return call(interpreter, new Object[0]);
+        }
+        return invoke(interpreter, frame(interpreter));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        if (!direct(interpreter)) {
+            return call(interpreter, new Object[] { a });
+        }
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        return invoke(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        if (!direct(interpreter)) {
+            return call(interpreter, new Object[] { a, b });
+        }
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        environment.slots[1] = b;
+        return invoke(interpreter, environment);
+    }
+
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        if (!direct(interpreter)) {
+            return call(interpreter, new Object[] { a, b, c });
         }
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        environment.slots[1] = b;
+        environment.slots[2] = c;
+        return invoke(interpreter, environment);
+    }
 
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        if (!direct(interpreter)) {
+            return call(interpreter, new Object[] { a, b, c, d });
+        }
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        environment.slots[1] = b;
+        environment.slots[2] = c;
+        environment.slots[3] = d;
+        return invoke(interpreter, environment);
+    }
+
+    boolean direct(Interpreter interpreter) {
+        return interpreter.jit == null && interpreter.nodes == null;
+    }
+
+    Environment frame(Interpreter interpreter) {
+        // Resolver 确定不会被闭包留住的函数，环境从解释器的帧栈里借
+        if (declaration.pooled) {
+            return interpreter.acquire(closure, declaration.locals);
+        }
+        return new Environment(closure, declaration.locals);
+    }
+
+    private Object execute(Interpreter interpreter, Environment environment) {
+        // 函数体执行完（包括出错的时候）把借来的环境还回去，尾调用的参数这时已经算好了
         try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
+            return interpreter.executeBody(declaration, environment);
+        } finally {
+            if (declaration.pooled) {
+                interpreter.release(environment, declaration.locals);
+            }
+        }
+    }
+
+    Object invoke(Interpreter interpreter, Environment environment) {
+        Object result = execute(interpreter, environment);
+        if (result != Interpreter.TAIL_CALL) {
+            return result;
         }
-        return null;
+        // 以尾调用结束，交给 call 的蹦床接着调用
+        LoxFunction next = interpreter.tailCallee;
+        Object[] arguments = interpreter.tailArguments;
+        interpreter.tailCallee = null;
+        interpreter.tailArguments = null;
+        return next.call(interpreter, arguments);
     }
-}
\ No newline at end of file
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        LoxFunction function = this;
+        // 蹦床：函数体以尾调用结束时，在这一层接着调用下一个函数
+        while (true) {
+            if (function.code == null && interpreter.jit != null) {
+                function.code = interpreter.jit.codeFor(function.declaration);
+            }
+            Object result;
+            if (function.code != null && function.code != JitCompiler.INTERPRETED) {
+                result = function.code.call(interpreter, function.closure, arguments);
+            } else if (interpreter.nodes != null) {
+                result = interpreter.nodes.body(function.declaration).call(function.closure, arguments);
+            } else {
+                Environment environment = function.frame(interpreter);
+                // 参数依次占据前面的 slot
+                System.arraycopy(arguments, 0, environment.slots, 0, arguments.length);
+                result = function.execute(interpreter, environment);
+            }
+            if (result != Interpreter.TAIL_CALL) {
+                return result;
+            }
+            function = interpreter.tailCallee;
+            arguments = interpreter.tailArguments;
+            interpreter.tailCallee = null;
+            interpreter.tailArguments = null;
+        }
+    }
+}
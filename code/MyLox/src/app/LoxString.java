@@ -0,0 +1,127 @@
+package app;
+
+import java.util.ArrayDeque;
+
+/**
+ * LoxString
+ *
+ * 字符串拼接的结果。拼接的时候只记下左右两半和总长度，不复制字符；
+ * 要看内容的时候（比较、打印、hashCode、内置函数）才一次拼成 String，
+ * 拼好以后缓存起来，两半丢掉。在循环里一行一行拼出来的长字符串，总的代价和长度成正比。
+ * 字面量还是 String，所以运行时的字符串是 String 或者 LoxString，两个都是 CharSequence。
+ * 和其他运行时的值一样只在一个解释器的线程里用，不加锁。
+ */
+final class LoxString implements CharSequence {
+    // 两边加起来不超过这个长度时直接拼成 String，短字符串不值得建节点
+    private static final int SHORT = 32;
+    static final String TOO_LONG = "String is too long.";
+
+    // 还没拼起来的两半，String 或者 LoxString；拼好以后都是 null
+    private CharSequence left;
+    private CharSequence right;
+    private final int length;
+    private String flat;
+
+    private LoxString(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right, Token operator) {
+        // + 的各个实现都从这里拼接，长度超出 int 是 Lox 的运行时错误，报在 + 上
+        int length;
+        try {
+            length = Math.addExact(left.length(), right.length());
+        } catch (ArithmeticException e) {
+            throw new RuntimeError(operator, TOO_LONG);
+        }
+        if (length <= SHORT && left instanceof String && right instanceof String) {
+            return ((String) left).concat((String) right);
+        }
+        return new LoxString(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flatten();
+        }
+        return flat;
+    }
+
+    private void flatten() {
+        // 从后往前填，先弹出右半边。一行一行拼出来的树往左边长，栈始终很浅；
+        // 不用递归，很深的树也不会栈溢出
+        char[] chars = new char[length];
+        int end = length;
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(left);
+        pending.push(right);
+        while (!pending.isEmpty()) {
+            CharSequence part = pending.pop();
+            if (part instanceof LoxString && ((LoxString) part).flat == null) {
+                LoxString node = (LoxString) part;
+                pending.push(node.left);
+                pending.push(node.right);
+                continue;
+            }
+            String text = part.toString();
+            end -= text.length();
+            text.getChars(0, text.length(), chars, end);
+        }
+        flat = new String(chars);
+        left = null;
+        right = null;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        // Lox 的 ==，几种执行方式共用。字符串不管是 String 还是 LoxString 都比内容；
+        // String.equals 不认 LoxString，所以混着的不能交给 equals
+        if (a == null) {
+            return b == null;
+        }
+        if (a instanceof LoxString || b instanceof LoxString) {
+            return isText(a) && isText(b) && ((CharSequence) a).length() == ((CharSequence) b).length()
+                    && a.toString().equals(b.toString());
+        }
+        return a.equals(b);
+    }
+
+    private static boolean isText(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        // 只和 LoxString 比，和 String 比要用 isEqual，不然 equals 不对称
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof LoxString)) {
+            return false;
+        }
+        LoxString text = (LoxString) other;
+        return length == text.length && toString().equals(text.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -1,186 +1,100 @@
 package app;
 
-import static app.TokenType.AND;
 import static app.TokenType.BANG;
 import static app.TokenType.BANG_EQUAL;
-import static app.TokenType.CLASS;
 import static app.TokenType.COMMA;
 import static app.TokenType.DOT;
-import static app.TokenType.ELIF;
-import static app.TokenType.ELSE;
 import static app.TokenType.EOF;
 import static app.TokenType.EQUAL;
 import static app.TokenType.EQUAL_EQUAL;
-import static app.TokenType.FALSE;
-import static app.TokenType.FOR;
-import static app.TokenType.FUN;
 import static app.TokenType.GREATER;
 import static app.TokenType.GREATER_EQUAL;
-import static app.TokenType.IDENTIFIER;
-import static app.TokenType.IF;
 import static app.TokenType.LEFT_BRACE;
 import static app.TokenType.LEFT_PAREN;
 import static app.TokenType.LESS;
 import static app.TokenType.LESS_EQUAL;
 import static app.TokenType.MINUS;
-import static app.TokenType.NIL;
 import static app.TokenType.NUMBER;
-import static app.TokenType.OR;
 import static app.TokenType.PLUS;
-import static app.TokenType.PRINT;
-import static app.TokenType.RETURN;
 import static app.TokenType.RIGHT_BRACE;
 import static app.TokenType.RIGHT_PAREN;
 import static app.TokenType.SEMICOLON;
 import static app.TokenType.SLASH;
 import static app.TokenType.STAR;
 import static app.TokenType.STRING;
-import static app.TokenType.SUPER;
-import static app.TokenType.THIS;
-import static app.TokenType.TRUE;
-import static app.TokenType.VAR;
-import static app.TokenType.WHILE;
-import static app.TokenType.假;
-import static app.TokenType.函数;
-import static app.TokenType.否则;
-import static app.TokenType.声明;
-import static app.TokenType.如果;
-import static app.TokenType.并且;
-import static app.TokenType.当;
-import static app.TokenType.循环;
-import static app.TokenType.或者;
-import static app.TokenType.真;
-import static app.TokenType.空;
-import static app.TokenType.类;
-import static app.TokenType.继承;
-import static app.TokenType.输出;
-import static app.TokenType.返回;
-import static app.TokenType.这个;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-class Token {
-    final TokenType type;
-    final String lexeme;
-    final Object literal;
-    final int line;
+import app.vm.CompileError;
+import app.vm.Compiler;
+import app.vm.ObjFunction;
+import app.vm.VM;
+import app.vm.VmError;
 
-    Token(TokenType type, String lexeme, Object literal, int line) {
-        this.type = type;
-        this.lexeme = lexeme;
-        this.literal = literal;
-        this.line = line;
-    }
+/**
+ * Scanner
+ *
+ * 手写的词法分析器，一个字符一个字符地判断。
+ */
+class Scanner extends Lexer {
+    private boolean added = false;
 
-    public String toString() {
-        return type + " " + lexeme + " " + literal;
+    Scanner(Reader reader) {
+        super(reader);
     }
-}
 
-class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
-    private int start = 0;
-    private int current = 0;
-    private int line = 1;
-
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("elif", ELIF);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-        // 中文编程
-        keywords.put("并且", 并且);
-        keywords.put("类", 类);
-        keywords.put("否则", 否则);
-        keywords.put("假", 假);
-        keywords.put("循环", 循环);
-        keywords.put("函数", 函数);
-        keywords.put("如果", 如果);
-        keywords.put("空", 空);
-        keywords.put("或者", 或者);
-        keywords.put("输出", 输出);
-        keywords.put("返回", 返回);
-        keywords.put("继承", 继承);
-        keywords.put("这个", 这个);
-        keywords.put("真", 真);
-        keywords.put("声明", 声明);
-        keywords.put("当", 当);
+    Scanner(Reader reader, int line) {
+        super(reader, line);
     }
 
     Scanner(String source) {
-        this.source = source;
-    }
-
-    private boolean isAtEnd() {
-        return current >= source.length();
+        super(source);
     }
 
     private char advance() {
-        current++;
-        return source.charAt(current - 1);
+        fill(1);
+        return buffer[position++];
     }
 
     private void addToken(TokenType type) {
         // token 有四个属性 type lexeme literal line
-        // 只有 字符串 和 数字 有 literal，其他的暂时都没有
-        addToken(type, null);
-    }
-
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-
-        tokens.add(new Token(type, text, literal, line));
+        // 只有 字符串 和 数字 有 literal，等到要的时候再从 lexeme 得到
+        tokens.add(type, start, offset + position - start, line);
+        added = true;
     }
 
     private boolean match(char expected) {
         // 经过 advance 以后
         // current 指向下一个
-        if (isAtEnd() || source.charAt(current) != expected) {
+        if (isAtEnd() || buffer[position] != expected) {
             return false;
         }
         // current 始终指向下一个
-        current++;
+        advance();
         return true;
     }
 
     private char peek() {
         if (isAtEnd())
             return '\0';
-        return source.charAt(current);
+        return buffer[position];
     }
 
     private char peekNext() {
-        int idx = current + 1;
-        if (idx >= source.length()) {
+        if (!fill(2)) {
             return '\0';
         }
-        return source.charAt(idx);
+        return buffer[position + 1];
     }
 
     private void string() {
@@ -196,15 +110,14 @@ class Scanner {
         // 退出循环有两种情况
         // 在文件末尾
         if (isAtEnd()) {
-            MyLox.error(line, "Unterminated string.");
+            errors.error(line, "Unterminated string.");
             return;
         }
 
         // 消耗另外一个 "
         advance();
 
-        String value = source.substring(start, current);
-        addToken(STRING, value);
+        addToken(STRING);
     }
 
     private boolean isDigit(char ch) {
@@ -234,11 +147,11 @@ class Scanner {
                     advance();
                 }
             } else {
-                MyLox.error(line, "Unexpected character '.'");
+                errors.error(line, "Unexpected character '.'");
             }
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER);
     }
 
     private void identifier() {
@@ -247,15 +160,8 @@ class Scanner {
             advance();
         }
 
-        String text = source.substring(start, current);
-
-        // 检查这个 identifier 是不是关键字
-        TokenType type = keywords.get(text);
-
-        if (type == null) {
-            type = IDENTIFIER;
-        }
-        addToken(type);
+        // 检查这个 identifier 是不是关键字，直接在 buffer 上比较
+        addToken(Keywords.lookup(buffer, start - offset, offset + position - start));
     }
 
     private void scanToken() {
@@ -338,7 +244,7 @@ class Scanner {
             } else if (isAlpha(c)) {
                 identifier();
             } else {
-                MyLox.error(line, "Unexpected character.");
+                errors.error(line, "Unexpected character.");
             }
             break;
 
@@ -346,14 +252,18 @@ class Scanner {
 
     }
 
-    List<Token> scanTokens() {
-        while (!isAtEnd()) {
-            start = current;
+    @Override
+    void scan() {
+        // 跳过空白和注释，直到扫出一个 token；最后给一个 EOF
+        added = false;
+        while (!added) {
+            start = offset + position;
+            if (isAtEnd()) {
+                tokens.add(EOF, start, 0, line);
+                return;
+            }
             scanToken();
         }
-
-        tokens.add(new Token(EOF, "", null, line));
-        return this.tokens;
     }
 
 }
@@ -364,78 +274,239 @@ class Scanner {
 public class MyLox {
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    // -vm：用字节码虚拟机代替树遍历解释器
+    private static boolean useVm = false;
+    // -jit：树遍历解释器，热的函数编译成 JVM 字节码
+    private static boolean useJit = false;
+    // -nodes：执行时按类型改写自己的 Node 树
+    private static boolean useNodes = false;
+    // -O：常量折叠、删除执行不到的代码
+    private static boolean optimize = false;
+    // -dfa：用 tools/GenerateLexer 生成的表驱动词法分析器
+    private static boolean useDfa = false;
+    // -cache：解析好的语法树存进源文件旁边的 .loxc，源码没变的时候直接读回来
+    private static boolean useCache = false;
+    // -profile：树遍历解释器，记下每个函数、每行的执行次数和时间，结束时打印到 stderr
+    private static boolean profile = false;
 
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        if (useCache) {
+            runCached(Paths.get(path));
+        } else {
+            // 边读边扫描，不把整个文件读进内存
+            try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)),
+                    Charset.defaultCharset())) {
+                run(reader);
+            }
+        }
+        if (hadError) {
+            System.exit(65);
+        }
+        if(hadRuntimeError) {
+            System.exit(70);
+        }
     }
 
-    private static void run(String source) {
+    private static void runFiles(List<String> paths) throws IOException {
+        // 多个文件并行扫描、解析，按给出的顺序连成一个程序再执行
+        List<Stmt> statements = new FrontEnd(useDfa).parse(FrontEnd.sources(paths));
+        if (!hadError) {
+            execute(statements);
+        }
         if (hadError) {
             System.exit(65);
         }
         if(hadRuntimeError) {
             System.exit(70);
         }
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    }
+
+    private static void runCached(Path path) throws IOException {
+        // 要用源码的哈希找缓存，所以整个读进来
+        byte[] source = Files.readAllBytes(path);
+        Path cache = AstCache.pathFor(path);
+        List<Stmt> statements = AstCache.load(cache, source);
+        if (statements == null) {
+            String text = new String(source, Charset.defaultCharset());
+            Lexer lexer = useDfa ? new DfaScanner(text) : new Scanner(text);
+            statements = new Parser(lexer.tokens()).parse();
+            if (hadError) {
+                return;
+            }
+            try {
+                AstCache.store(cache, source, statements);
+            } catch (IOException e) {
+                // 写不了缓存（比如目录只读）就算了，下次再解析
+            }
+        }
+        execute(statements);
+    }
 
-        // for(Token token : tokens) {
-        //     System.out.println(token.toString());
-        // }
+    private static void run(Reader source) {
+        Lexer lexer = useDfa ? new DfaScanner(source) : new Scanner(source);
 
-        Parser parser = new Parser(tokens);
+        // Parser 需要 token 的时候才去扫描
+        Parser parser = new Parser(lexer.tokens());
         List<Stmt> statements = parser.parse();
+        if (hadError) {
+            return;
+        }
+        execute(statements);
+    }
+
+    private static void execute(List<Stmt> statements) {
+        // 计算局部变量的位置
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        if (hadError) {
+            return;
+        }
+
+        if (optimize) {
+            statements = new Optimizer().optimize(statements);
+        }
 
         // // AstPrinter ast = new AstPrinter();
         // // System.out.println(ast.printStatements(statements));
 
+        if (useVm) {
+            runVm(statements);
+            return;
+        }
+
+        if (profile) {
+            Profiler profiler = new Profiler(System.out);
+            profiler.interpret(statements);
+            profiler.report(System.err);
+            return;
+        }
 
         Interpreter interpreter = new Interpreter();
+        if (useJit) {
+            interpreter.jit = new JitCompiler();
+        }
+        if (useNodes) {
+            interpreter.nodes = new NodeBuilder(interpreter);
+        }
         interpreter.interpret(statements);
 
     }
 
+    private static void runVm(List<Stmt> statements) {
+        ObjFunction script;
+        try {
+            script = new Compiler().compile(statements);
+        } catch (CompileError error) {
+            error(error.file, error.line, error.getMessage());
+            return;
+        }
+
+        try {
+            VM vm = new VM();
+            Native.install(vm);
+            vm.interpret(script);
+        } catch (VmError error) {
+            runtimeError(error.file, error.line, error.getMessage());
+        }
+    }
+
+    /**
+     * 嵌入用的入口：解析、Resolver、Optimizer 只在这里做一次，
+     * 错误收集起来作为 ScriptError 抛给宿主，不打印，也不设置 hadError
+     */
+    public static CompiledScript compile(String source) {
+        ErrorReporter errors = new ErrorReporter(null);
+        Lexer lexer = new Scanner(source);
+        lexer.errors = errors;
+        List<Stmt> statements = new Parser(lexer.tokens()).parse();
+        if (!errors.hadError()) {
+            Resolver resolver = new Resolver();
+            resolver.errors = errors;
+            resolver.resolve(statements);
+        }
+        if (errors.hadError()) {
+            throw new ScriptError(String.join("\n", errors.messages()), 0);
+        }
+        return new CompiledScript(new Optimizer().optimizeScript(statements));
+    }
+
     private static void runPrompt() throws IOException {
         // 读一行
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
         for (;;) {
             System.out.print("> ");
-            run(reader.readLine());
+            run(new StringReader(reader.readLine()));
             hadError = false;
         }
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    static void error(String file, int line, String message) {
+        report(file, line, "", message);
     }
 
     static void error(Token token, String message) {
-        if (token.type == EOF) {
-            // 代码结束了
-            report(token.line, " at end", message);
-        } else {
-            // 没有结束
-            report(token.line, " at '" + token.lexeme + "' ", message);
-        }
+        ErrorReporter.STDERR.error(token, message);
     }
 
-    static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
+    static void report(String file, int line, String where, String message) {
+        System.err.println(ErrorReporter.format(file, line, where, message));
         hadError = true;
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        runtimeError(error.token.file(), error.token.line(), error.getMessage());
+    }
+
+    static void runtimeError(String file, int line, String message) {
+        // 多个文件的时候和编译错误一样，行号前面带上文件名
+        System.err.println(message + "\n" + prefix(file) + "[line " + line + "]");
         hadRuntimeError = true;
     }
 
+    static String prefix(String file) {
+        return file == null ? "" : file + ": ";
+    }
+
+    private static void usage() {
+        System.out.println(
+                "usage MyLox [-O] [-dfa] [-cache] [-profile | -vm | -jit | -nodes] <input_file | directory>...");
+    }
+
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("usage MyLox <input_file>");
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("-vm")) {
+                useVm = true;
+            } else if (arg.equals("-jit")) {
+                useJit = true;
+            } else if (arg.equals("-nodes")) {
+                useNodes = true;
+            } else if (arg.equals("-O")) {
+                optimize = true;
+            } else if (arg.equals("-dfa")) {
+                useDfa = true;
+            } else if (arg.equals("-cache")) {
+                useCache = true;
+            } else if (arg.equals("-profile")) {
+                profile = true;
+            } else if (arg.startsWith("-")) {
+                usage();
+                return;
+            } else {
+                files.add(arg);
+            }
+        }
+        if (profile && (useVm || useJit || useNodes)) {
+            // 只能给树遍历解释器计时
+            usage();
+            return;
+        }
+
+        if (files.size() > 1 || files.size() == 1 && Files.isDirectory(Paths.get(files.get(0)))) {
+            runFiles(files);
+        } else if (files.size() == 1) {
+            runFile(files.get(0));
         } else {
             runPrompt();
         }
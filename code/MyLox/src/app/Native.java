@@ -0,0 +1,261 @@
+package app;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+import app.vm.NativeFunction;
+import app.vm.VM;
+
+/**
+ * Native
+ *
+ * 用 Java 实现的内置函数：数学、时间和字符串。每个 Interpreter 创建时由 install 定义成全局变量，
+ * 函数对象本身没有状态，各个解释器共用。调用的地方认出 Native 以后参数直接放在数组里调用，
+ * 不经过 List；数学函数在数值通道里用 double 调用，参数和结果都不装箱。
+ * 脚本里的字符串带着引号，字符串拼接以后中间也有，字符串函数先去掉所有的引号再处理，
+ * 返回的字符串再加上一对。
+ */
+abstract class Native implements LoxCallable, NativeFunction {
+    private static final Native[] ALL = {
+            new Unary("sqrt", Math::sqrt),
+            new Unary("floor", Math::floor),
+            new Unary("ceil", Math::ceil),
+            new Unary("abs", Math::abs),
+            new Binary("pow", Math::pow),
+            new Binary("min", Math::min),
+            new Binary("max", Math::max),
+            // 秒，和 Crafting Interpreters 的 clock() 一样
+            new Clock("clock", () -> System.currentTimeMillis() / 1000.0),
+            new Clock("nanoTime", () -> (double) System.nanoTime()),
+            new Text("len", text -> (double) text.length()),
+            new Text("upper", text -> quote(text.toUpperCase())),
+            new Text("lower", text -> quote(text.toLowerCase())),
+            new Substring(),
+            new Str(),
+            new Num(),
+    };
+
+    final String name;
+    private final int arity;
+
+    Native(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    static void install(Environment globals) {
+        for (Native function : ALL) {
+            globals.define(function.name, function);
+        }
+    }
+
+    static void install(VM vm) {
+        for (Native function : ALL) {
+            vm.define(function.name, function);
+        }
+    }
+
+    // 解释器、JIT 和 Node 树调用内置函数都走这里，错误报在调用处
+    Object call(Object[] arguments, Token paren) {
+        if (arguments.length != arity) {
+            throw new RuntimeError(paren, "Expected " + arity + " arguments but got " + arguments.length + ".");
+        }
+        try {
+            return call(arguments);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeError(paren, e.getMessage());
+        }
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return call(arguments);
+    }
+
+    /** 参数个数已经检查过；类型不对时抛出 IllegalArgumentException */
+    @Override
+    public abstract Object call(Object[] arguments);
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+
+    String numbersExpected() {
+        return "Arguments to '" + name + "' must be numbers.";
+    }
+
+    double number(Object value) {
+        if (value instanceof Double) {
+            return (double) value;
+        }
+        throw new IllegalArgumentException(numbersExpected());
+    }
+
+    String text(Object value) {
+        if (value instanceof CharSequence) {
+            return value.toString().replace("\"", "");
+        }
+        throw new IllegalArgumentException("Arguments to '" + name + "' must be strings.");
+    }
+
+    static String quote(String text) {
+        return "\"" + text + "\"";
+    }
+
+    /**
+     * Unary
+     *
+     * 一个 double 参数的数学函数
+     */
+    static final class Unary extends Native {
+        private final DoubleUnaryOperator operator;
+
+        Unary(String name, DoubleUnaryOperator operator) {
+            super(name, 1);
+            this.operator = operator;
+        }
+
+        double apply(double a) {
+            return operator.applyAsDouble(a);
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            return apply(number(arguments[0]));
+        }
+    }
+
+    /**
+     * Binary
+     *
+     * 两个 double 参数的数学函数
+     */
+    static final class Binary extends Native {
+        private final DoubleBinaryOperator operator;
+
+        Binary(String name, DoubleBinaryOperator operator) {
+            super(name, 2);
+            this.operator = operator;
+        }
+
+        double apply(double a, double b) {
+            return operator.applyAsDouble(a, b);
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            return apply(number(arguments[0]), number(arguments[1]));
+        }
+    }
+
+    /**
+     * Clock
+     *
+     * 没有参数，返回一个时间
+     */
+    static final class Clock extends Native {
+        private final DoubleSupplier time;
+
+        Clock(String name, DoubleSupplier time) {
+            super(name, 0);
+            this.time = time;
+        }
+
+        double apply() {
+            return time.getAsDouble();
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            return apply();
+        }
+    }
+
+    /**
+     * Text
+     *
+     * 一个字符串参数
+     */
+    static final class Text extends Native {
+        private final Function<String, Object> function;
+
+        Text(String name, Function<String, Object> function) {
+            super(name, 1);
+            this.function = function;
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            return function.apply(text(arguments[0]));
+        }
+    }
+
+    /**
+     * Substring
+     *
+     * substr(s, start, end)：下标按去掉引号以后的字符算，超出范围时截到两头
+     */
+    static final class Substring extends Native {
+        Substring() {
+            super("substr", 3);
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            String text = text(arguments[0]);
+            int start = (int) Math.max(0, Math.min(text.length(), number(arguments[1])));
+            int end = (int) Math.max(start, Math.min(text.length(), number(arguments[2])));
+            return quote(text.substring(start, end));
+        }
+    }
+
+    /**
+     * Str
+     *
+     * str(x)：和 print 打印的一样，字符串原样返回
+     */
+    static final class Str extends Native {
+        Str() {
+            super("str", 1);
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            if (arguments[0] instanceof CharSequence) {
+                return arguments[0];
+            }
+            return quote(Interpreter.stringify(arguments[0]));
+        }
+    }
+
+    /**
+     * Num
+     *
+     * num(s)：把字符串解析成数字，不是数字的时候返回 nil
+     */
+    static final class Num extends Native {
+        Num() {
+            super("num", 1);
+        }
+
+        @Override
+        public Object call(Object[] arguments) {
+            if (arguments[0] instanceof Double) {
+                return arguments[0];
+            }
+            try {
+                return Double.parseDouble(text(arguments[0]).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,755 @@
+package app;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Node
+ *
+ * 可以自我特化的执行树，由 NodeBuilder 从 Expr / Stmt 生成。
+ * 节点第一次执行时根据看到的操作数类型把自己替换成专门的版本，
+ * 比如两个数字相加的 AddNumbers、两个字符串相加的 Concat；
+ * 之后类型变了就换成通用版本，不会再换回来，这样每个节点最多改写两次。
+ */
+abstract class Node {
+    Node parent;
+
+    <T extends Node> T adopt(T child) {
+        if (child != null) {
+            child.parent = this;
+        }
+        return child;
+    }
+
+    // 在父节点里用 replacement 替换自己
+    <T extends Node> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+        return replacement;
+    }
+
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children.");
+    }
+
+    static boolean isTruthy(Object value) {
+        // 条件多半是比较的结果，先看布尔
+        if (value instanceof Boolean) {
+            return (boolean) value;
+        }
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Double) {
+            return (double) value != 0;
+        }
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        return LoxString.isEqual(a, b);
+    }
+
+    abstract static class ExprNode extends Node {
+        abstract Object execute(Environment environment);
+    }
+
+    // 语句正常执行完返回 NEXT，执行了 return 时返回 return 的值，
+    // 块和循环看到不是 NEXT 就原样往外返回，不用异常展开
+    static final Object NEXT = new Object();
+
+    abstract static class StmtNode extends Node {
+        abstract Object execute(Environment environment);
+    }
+
+    // 函数体，按声明缓存，同一个函数的所有闭包共用
+    static final class Body extends Node {
+        final int locals;
+        final StmtNode[] statements;
+
+        Body(int locals, StmtNode[] statements) {
+            this.locals = locals;
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        Object call(Environment closure, Object[] arguments) {
+            Environment environment = new Environment(closure, locals);
+            // 参数依次占据前面的 slot
+            System.arraycopy(arguments, 0, environment.slots, 0, arguments.length);
+            for (StmtNode statement : statements) {
+                Object result = statement.execute(environment);
+                if (result != NEXT) {
+                    return result;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Literal extends ExprNode {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return value;
+        }
+    }
+
+    // 当前作用域里的局部变量
+    static final class LocalHere extends ExprNode {
+        final int slot;
+
+        LocalHere(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.get(slot);
+        }
+    }
+
+    static final class Local extends ExprNode {
+        final int depth;
+        final int slot;
+
+        Local(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.getAt(depth, slot);
+        }
+    }
+
+    static final class Global extends ExprNode {
+        final Environment globals;
+        final Token name;
+        // 第一次执行时查到的存储单元，以后直接读
+        Environment.Binding binding;
+
+        Global(Environment globals, Token name) {
+            this.globals = globals;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (binding == null) {
+                binding = globals.binding(name);
+            }
+            return binding.value;
+        }
+    }
+
+    abstract static class Assign extends ExprNode {
+        ExprNode value;
+
+        Assign(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            value = (ExprNode) replacement;
+        }
+    }
+
+    static final class AssignLocal extends Assign {
+        final int depth;
+        final int slot;
+
+        AssignLocal(int depth, int slot, ExprNode value) {
+            super(value);
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            environment.ancestor(depth).slots[slot] = result;
+            return result;
+        }
+    }
+
+    static final class AssignGlobal extends Assign {
+        final Environment globals;
+        final Token name;
+        Environment.Binding binding;
+
+        AssignGlobal(Environment globals, Token name, ExprNode value) {
+            super(value);
+            this.globals = globals;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            if (binding == null) {
+                binding = globals.binding(name);
+            }
+            binding.value = result;
+            return result;
+        }
+    }
+
+    static final class Logical extends ExprNode {
+        final boolean or;
+        ExprNode left;
+        ExprNode right;
+
+        Logical(boolean or, ExprNode left, ExprNode right) {
+            this.or = or;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object value = left.execute(environment);
+            if (isTruthy(value) == or) {
+                return value;
+            }
+            return right.execute(environment);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = (ExprNode) replacement;
+            } else {
+                right = (ExprNode) replacement;
+            }
+        }
+    }
+
+    static final class Negate extends ExprNode {
+        final Token operator;
+        ExprNode right;
+
+        Negate(Token operator, ExprNode right) {
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object value = right.execute(environment);
+            if (value instanceof Double) {
+                return -(double) value;
+            }
+            throw new RuntimeError(operator, "Operands must be numbers.");
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            right = (ExprNode) replacement;
+        }
+    }
+
+    static final class Not extends ExprNode {
+        ExprNode right;
+
+        Not(ExprNode right) {
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return !isTruthy(right.execute(environment));
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            right = (ExprNode) replacement;
+        }
+    }
+
+    // 二元运算：先算两边，再交给 compute；特化的版本改写时可以直接拿算好的值继续
+    abstract static class Binary extends ExprNode {
+        final Token operator;
+        ExprNode left;
+        ExprNode right;
+
+        Binary(Token operator, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        final Object execute(Environment environment) {
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            return compute(l, r);
+        }
+
+        abstract Object compute(Object l, Object r);
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = (ExprNode) replacement;
+            } else {
+                right = (ExprNode) replacement;
+            }
+        }
+
+        RuntimeError numbersExpected() {
+            return new RuntimeError(operator, "Operands must be numbers.");
+        }
+    }
+
+    // 还没执行过的加法
+    static final class Add extends Binary {
+        Add(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            Binary specialized;
+            if (l instanceof Double && r instanceof Double) {
+                specialized = new AddNumbers(operator, left, right);
+            } else if (l instanceof CharSequence && r instanceof CharSequence) {
+                specialized = new Concat(operator, left, right);
+            } else {
+                specialized = new AddGeneric(operator, left, right);
+            }
+            return replace(specialized).compute(l, r);
+        }
+    }
+
+    static final class AddNumbers extends Binary {
+        AddNumbers(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof Double && r instanceof Double) {
+                return (double) l + (double) r;
+            }
+            return replace(new AddGeneric(operator, left, right)).compute(l, r);
+        }
+    }
+
+    static final class Concat extends Binary {
+        Concat(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof CharSequence && r instanceof CharSequence) {
+                return LoxString.concat((CharSequence) l, (CharSequence) r, operator);
+            }
+            return replace(new AddGeneric(operator, left, right)).compute(l, r);
+        }
+    }
+
+    static final class AddGeneric extends Binary {
+        AddGeneric(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof Double && r instanceof Double) {
+                return (double) l + (double) r;
+            }
+            if (l instanceof CharSequence && r instanceof CharSequence) {
+                return LoxString.concat((CharSequence) l, (CharSequence) r, operator);
+            }
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+        }
+    }
+
+    // 减、乘、除和比较只对数字有意义，不需要改写
+    static final class Subtract extends Binary {
+        Subtract(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof Double && r instanceof Double) {
+                return (double) l - (double) r;
+            }
+            throw numbersExpected();
+        }
+    }
+
+    static final class Multiply extends Binary {
+        Multiply(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof Double && r instanceof Double) {
+                return (double) l * (double) r;
+            }
+            throw numbersExpected();
+        }
+    }
+
+    static final class Divide extends Binary {
+        Divide(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof Double && r instanceof Double) {
+                if ((double) r == 0) {
+                    throw new RuntimeError(operator, "divide zero");
+                }
+                return (double) l / (double) r;
+            }
+            throw numbersExpected();
+        }
+    }
+
+    static final class Compare extends Binary {
+        Compare(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (!(l instanceof Double && r instanceof Double)) {
+                throw numbersExpected();
+            }
+            double a = (double) l;
+            double b = (double) r;
+            switch (operator.type) {
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            case GREATER:
+                return a > b;
+            default:
+                return a >= b;
+            }
+        }
+    }
+
+    // 还没执行过的 == 和 !=
+    static final class Equal extends Binary {
+        final boolean negate;
+
+        Equal(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+            this.negate = operator.type == TokenType.BANG_EQUAL;
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            Binary specialized;
+            if (l instanceof Double && r instanceof Double) {
+                specialized = new EqualNumbers(operator, left, right, negate);
+            } else {
+                specialized = new EqualGeneric(operator, left, right, negate);
+            }
+            return replace(specialized).compute(l, r);
+        }
+    }
+
+    static final class EqualNumbers extends Binary {
+        final boolean negate;
+
+        EqualNumbers(Token operator, ExprNode left, ExprNode right, boolean negate) {
+            super(operator, left, right);
+            this.negate = negate;
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            if (l instanceof Double && r instanceof Double) {
+                // 和 Double.equals 一样比较位
+                boolean equal = Double.doubleToLongBits((double) l) == Double.doubleToLongBits((double) r);
+                return equal != negate;
+            }
+            return replace(new EqualGeneric(operator, left, right, negate)).compute(l, r);
+        }
+    }
+
+    static final class EqualGeneric extends Binary {
+        final boolean negate;
+
+        EqualGeneric(Token operator, ExprNode left, ExprNode right, boolean negate) {
+            super(operator, left, right);
+            this.negate = negate;
+        }
+
+        @Override
+        Object compute(Object l, Object r) {
+            return isEqual(l, r) != negate;
+        }
+    }
+
+    static final class Call extends ExprNode {
+        final Interpreter interpreter;
+        final Token paren;
+        ExprNode callee;
+        final ExprNode[] arguments;
+
+        Call(Interpreter interpreter, Token paren, ExprNode callee, ExprNode[] arguments) {
+            this.interpreter = interpreter;
+            this.paren = paren;
+            this.callee = adopt(callee);
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object[] values = new Object[arguments.length];
+            Object target = function(environment, values);
+            if (target instanceof Native) {
+                return ((Native) target).call(values, paren);
+            }
+            return ((LoxFunction) target).call(interpreter, values);
+        }
+
+        // 算出被调用的函数，参数放进 values；内置函数的参数个数由 Native.call 检查
+        Object function(Environment environment, Object[] values) {
+            Object function = callee.execute(environment);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].execute(environment);
+            }
+            if (function instanceof Native) {
+                return function;
+            }
+            if (!(function instanceof LoxFunction)) {
+                throw new RuntimeError(paren, "Can only call functions and classes.");
+            }
+            LoxFunction target = (LoxFunction) function;
+            if (values.length != target.arity()) {
+                throw new RuntimeError(paren,
+                        "Expected " + target.arity() + " arguments but got " + values.length + ".");
+            }
+            return target;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (callee == child) {
+                callee = (ExprNode) replacement;
+                return;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == child) {
+                    arguments[i] = (ExprNode) replacement;
+                }
+            }
+        }
+    }
+
+    // 只有一个表达式子节点的语句
+    abstract static class ExprStmt extends StmtNode {
+        ExprNode expression;
+
+        ExprStmt(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            expression = (ExprNode) replacement;
+        }
+    }
+
+    static final class Expression extends ExprStmt {
+        Expression(ExprNode expression) {
+            super(expression);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            expression.execute(environment);
+            return NEXT;
+        }
+    }
+
+    static final class Print extends ExprStmt {
+        private final PrintStream out;
+
+        Print(PrintStream out, ExprNode expression) {
+            super(expression);
+            this.out = out;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            out.println(Interpreter.stringify(expression.execute(environment)));
+            return NEXT;
+        }
+    }
+
+    static final class ReturnValue extends ExprStmt {
+        ReturnValue(ExprNode expression) {
+            super(expression);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return expression.execute(environment);
+        }
+    }
+
+    // return f(...)：只算出函数和参数，由 LoxFunction.call 的循环接着调用，Java 栈不增长
+    static final class TailCall extends StmtNode {
+        final Call call;
+
+        TailCall(Call call) {
+            this.call = adopt(call);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object[] values = new Object[call.arguments.length];
+            Object target = call.function(environment, values);
+            if (target instanceof Native) {
+                // 内置函数不会再调用 Lox 函数，直接调用
+                return ((Native) target).call(values, call.paren);
+            }
+            call.interpreter.tailCallee = (LoxFunction) target;
+            call.interpreter.tailArguments = values;
+            return Interpreter.TAIL_CALL;
+        }
+    }
+
+    // 变量声明和函数声明都归结为把一个值放进 slot 或者全局表
+    static final class Define extends ExprStmt {
+        final Environment globals;
+        final String name;
+        final int slot;
+
+        Define(Environment globals, String name, int slot, ExprNode expression) {
+            super(expression);
+            this.globals = globals;
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object value = expression.execute(environment);
+            if (slot < 0) {
+                globals.define(name, value);
+            } else {
+                environment.slots[slot] = value;
+            }
+            return NEXT;
+        }
+    }
+
+    // 在当前环境里创建闭包
+    static final class Closure extends ExprNode {
+        final Stmt.Function declaration;
+
+        Closure(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return new LoxFunction(declaration, environment);
+        }
+    }
+
+    static final class Block extends StmtNode {
+        final int locals;
+        final StmtNode[] statements;
+
+        Block(int locals, List<StmtNode> statements) {
+            this.locals = locals;
+            this.statements = statements.toArray(new StmtNode[0]);
+            for (StmtNode statement : this.statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            // locals 为 0 的块没有自己的作用域
+            Environment inner = locals == 0 ? environment : new Environment(environment, locals);
+            for (StmtNode statement : statements) {
+                Object result = statement.execute(inner);
+                if (result != NEXT) {
+                    return result;
+                }
+            }
+            return NEXT;
+        }
+    }
+
+    static final class If extends StmtNode {
+        ExprNode condition;
+        final StmtNode thenBranch;
+        final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (isTruthy(condition.execute(environment))) {
+                return thenBranch.execute(environment);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(environment);
+            }
+            return NEXT;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            condition = (ExprNode) replacement;
+        }
+    }
+
+    static final class While extends StmtNode {
+        ExprNode condition;
+        final StmtNode body;
+
+        While(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            while (isTruthy(condition.execute(environment))) {
+                Object result = body.execute(environment);
+                if (result != NEXT) {
+                    return result;
+                }
+            }
+            return NEXT;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            condition = (ExprNode) replacement;
+        }
+    }
+}
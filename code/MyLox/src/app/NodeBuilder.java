@@ -0,0 +1,175 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NodeBuilder
+ *
+ * 把 Resolver 处理过的 Expr / Stmt 转成可以自我特化的 Node 树。
+ * 变量的 depth 和 slot 在这里就定下来，运行时不再判断；
+ * 加法和相等比较先生成未初始化的节点，第一次执行时再按类型改写。
+ * 函数体按声明懒惰地转换，一个解释器一份。
+ */
+final class NodeBuilder implements Expr.Visitor<Node.ExprNode>, Stmt.Visitor<Node.StmtNode> {
+    private final Interpreter interpreter;
+    private final Map<Stmt.Function, Node.Body> bodies = new IdentityHashMap<>();
+    private final Map<List<Stmt>, Node.Body> scripts = new IdentityHashMap<>();
+
+    NodeBuilder(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    Node.Body script(List<Stmt> statements) {
+        // 同一个脚本再跑一遍时沿用已经特化过的树
+        Node.Body body = scripts.get(statements);
+        if (body == null) {
+            body = new Node.Body(0, statements(statements).toArray(new Node.StmtNode[0]));
+            scripts.put(statements, body);
+        }
+        return body;
+    }
+
+    Node.Body body(Stmt.Function declaration) {
+        Node.Body body = bodies.get(declaration);
+        if (body == null) {
+            body = new Node.Body(declaration.locals, statements(declaration.body).toArray(new Node.StmtNode[0]));
+            bodies.put(declaration, body);
+        }
+        return body;
+    }
+
+    private List<Node.StmtNode> statements(List<Stmt> statements) {
+        List<Node.StmtNode> nodes = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            nodes.add(statement.accept(this));
+        }
+        return nodes;
+    }
+
+    private Node.ExprNode build(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Node.ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new Node.Literal(expr.value);
+    }
+
+    @Override
+    public Node.ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public Node.ExprNode visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth < 0) {
+            return new Node.Global(interpreter.globals, expr.name);
+        }
+        if (expr.depth == 0) {
+            return new Node.LocalHere(expr.slot);
+        }
+        return new Node.Local(expr.depth, expr.slot);
+    }
+
+    @Override
+    public Node.ExprNode visitAssignExpr(Expr.Assign expr) {
+        Node.ExprNode value = build(expr.value);
+        if (expr.depth < 0) {
+            return new Node.AssignGlobal(interpreter.globals, expr.name, value);
+        }
+        return new Node.AssignLocal(expr.depth, expr.slot, value);
+    }
+
+    @Override
+    public Node.ExprNode visitLogicalExpr(Expr.Logical expr) {
+        return new Node.Logical(expr.operator.type == TokenType.OR, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public Node.ExprNode visitUnaryExpr(Expr.Unary expr) {
+        Node.ExprNode right = build(expr.right);
+        if (expr.operator.type == TokenType.MINUS) {
+            return new Node.Negate(expr.operator, right);
+        }
+        return new Node.Not(right);
+    }
+
+    @Override
+    public Node.ExprNode visitBinaryExpr(Expr.Binary expr) {
+        Token operator = expr.operator;
+        Node.ExprNode left = build(expr.left);
+        Node.ExprNode right = build(expr.right);
+        switch (operator.type) {
+        case PLUS:
+            return new Node.Add(operator, left, right);
+        case MINUS:
+            return new Node.Subtract(operator, left, right);
+        case STAR:
+            return new Node.Multiply(operator, left, right);
+        case SLASH:
+            return new Node.Divide(operator, left, right);
+        case EQUAL_EQUAL:
+        case BANG_EQUAL:
+            return new Node.Equal(operator, left, right);
+        default:
+            return new Node.Compare(operator, left, right);
+        }
+    }
+
+    @Override
+    public Node.ExprNode visitCallExpr(Expr.Call expr) {
+        Node.ExprNode[] arguments = new Node.ExprNode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = build(expr.arguments.get(i));
+        }
+        return new Node.Call(interpreter, expr.mark, build(expr.callee), arguments);
+    }
+
+    @Override
+    public Node.StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new Node.Block(stmt.locals, statements(stmt.statements));
+    }
+
+    @Override
+    public Node.StmtNode visitIfStmt(Stmt.If stmt) {
+        Node.StmtNode elseBranch = stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+        return new Node.If(build(stmt.condition), stmt.thenBranch.accept(this), elseBranch);
+    }
+
+    @Override
+    public Node.StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new Node.While(build(stmt.condition), stmt.body.accept(this));
+    }
+
+    @Override
+    public Node.StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new Node.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public Node.StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new Node.Print(interpreter.out, build(stmt.expression));
+    }
+
+    @Override
+    public Node.StmtNode visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.expr instanceof Expr.Call) {
+            return new Node.TailCall((Node.Call) build(stmt.expr));
+        }
+        return new Node.ReturnValue(build(stmt.expr));
+    }
+
+    @Override
+    public Node.StmtNode visitVarStmt(Stmt.Var stmt) {
+        Node.ExprNode value = stmt.initializer == null ? new Node.Literal(null) : build(stmt.initializer);
+        return new Node.Define(interpreter.globals, stmt.name.lexeme, stmt.slot, value);
+    }
+
+    @Override
+    public Node.StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        return new Node.Define(interpreter.globals, stmt.name.lexeme, stmt.slot, new Node.Closure(stmt));
+    }
+}
@@ -0,0 +1,445 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optimizer
+ *
+ * -O 打开的优化：字面量上的运算在编译时算好，条件是常量的 if / while 只留下会执行的分支，
+ * return 后面的语句删掉。在 Resolver 之后运行，这样编译错误和不优化时一样；
+ * 重新建的节点沿用原来节点上 Resolver 填好的字段。
+ * 会在运行时报错的运算（除零、类型不对）不折叠，留到运行时照常报错。
+ * 循环条件里不变的操作数提到循环前面，存进一个新的局部变量。
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // fold 算不出来时的返回值，null 是 nil，不能用
+    private static final Object NOT_CONSTANT = new Object();
+
+    // 和 Resolver 的作用域对应：函数和 locals 不为 0 的块，locals 随着新加的变量增加
+    private static class Scope {
+        int locals;
+
+        Scope(int locals) {
+            this.locals = locals;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+    private int hoisted = 0;
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        return statements(statements);
+    }
+
+    // 嵌入用：最后一条表达式语句的值是 eval 的结果，折叠成字面量也要留下
+    List<Stmt> optimizeScript(List<Stmt> statements) {
+        int last = statements.size() - 1;
+        if (last < 0 || !(statements.get(last) instanceof Stmt.Expression)) {
+            return optimize(statements);
+        }
+        List<Stmt> result = statements(statements.subList(0, last));
+        result.add(new Stmt.Expression(optimize(((Stmt.Expression) statements.get(last)).expression)));
+        return result;
+    }
+
+    private List<Stmt> statements(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt optimized = statement.accept(this);
+            // null 表示这条语句什么也不做
+            if (optimized != null) {
+                result.add(optimized);
+            }
+            if (optimized instanceof Stmt.Return) {
+                // 后面的语句执行不到
+                break;
+            }
+        }
+        return result;
+    }
+
+    // if 的分支、while 的循环体不能是 null，删掉了就换成空代码块
+    private Stmt branch(Stmt stmt) {
+        Stmt optimized = stmt.accept(this);
+        if (optimized == null) {
+            return new Stmt.Block(new ArrayList<>());
+        }
+        return optimized;
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) {
+            return expression;
+        }
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr.Assign assign = new Expr.Assign(expr.name, optimize(expr.value));
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            if (expr.operator.type == TokenType.BANG) {
+                return new Expr.Literal(!isTruthy(value));
+            }
+            if (value instanceof Double) {
+                return new Expr.Literal(-(double) value);
+            }
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object value = fold(expr.operator.type, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (value != NOT_CONSTANT) {
+                return new Expr.Literal(value);
+            }
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal) {
+            // 左边是常量，结果要么就是左边，要么就是右边
+            boolean truthy = isTruthy(((Expr.Literal) left).value);
+            if (truthy == (expr.operator.type == TokenType.OR)) {
+                return left;
+            }
+            return right;
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.mark, arguments);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.locals == 0) {
+            // 没有自己的作用域
+            return new Stmt.Block(statements(stmt.statements));
+        }
+        Scope scope = new Scope(stmt.locals);
+        scopes.add(scope);
+        Stmt.Block block = new Stmt.Block(statements(stmt.statements));
+        scopes.remove(scopes.size() - 1);
+        block.locals = scope.locals;
+        block.pooled = stmt.pooled;
+        return block;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal) {
+            if (isTruthy(((Expr.Literal) condition).value)) {
+                return stmt.thenBranch.accept(this);
+            }
+            return stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+        }
+        Stmt elseBranch = stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+        return new Stmt.If(condition, branch(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal && !isTruthy(((Expr.Literal) condition).value)) {
+            return null;
+        }
+        Stmt body = branch(stmt.body);
+        if (!(condition instanceof Expr.Binary)) {
+            return new Stmt.While(condition, body);
+        }
+
+        // 条件是 a op b：不变的一边在第一次判断条件时算一次就够了。
+        // 提出去的值正好在原来第一次求值的位置算，报错也一样；
+        // 提右边时左边必须是读局部变量或者字面量，不会有副作用也不会报错
+        Expr.Binary binary = (Expr.Binary) condition;
+        Set<String> assigned = new HashSet<>();
+        if (!scanLoop(condition, assigned) || !scanLoop(body, assigned)) {
+            return new Stmt.While(condition, body);
+        }
+        Expr left = binary.left;
+        Expr right = binary.right;
+        List<Stmt> statements = new ArrayList<>();
+        // 顶层没有作用域，新变量放进包着循环的块里，不能变成全局变量：
+        // 嵌入的时候全局变量会写回宿主的 bindings。顶层循环里用到的局部变量都在循环里面声明，
+        // 多一层块不影响它们的 depth
+        boolean topLevel = scopes.isEmpty();
+        if (topLevel) {
+            scopes.add(new Scope(0));
+        }
+        if (isInvariant(left, assigned)) {
+            left = hoist(left, statements);
+        }
+        if (isInvariant(right, assigned) && isQuiet(left)) {
+            right = hoist(right, statements);
+        }
+        int locals = topLevel ? scopes.remove(0).locals : 0;
+        if (statements.isEmpty()) {
+            return new Stmt.While(condition, body);
+        }
+        // 不在顶层的时候新变量放在外层作用域里，这个块自己不是作用域
+        statements.add(new Stmt.While(new Expr.Binary(left, binary.operator, right), body));
+        Stmt.Block block = new Stmt.Block(statements);
+        block.locals = locals;
+        return block;
+    }
+
+    // 在 statements 里加一条 var 保存 expr 的值，返回读这个变量的表达式
+    private Expr hoist(Expr expr, List<Stmt> statements) {
+        Token name = new Token(TokenType.IDENTIFIER, "(invariant " + hoisted++ + ")", null, line(expr));
+        Stmt.Var var = new Stmt.Var(name, expr);
+        Expr.Variable variable = new Expr.Variable(name);
+        var.slot = scopes.get(scopes.size() - 1).locals++;
+        variable.depth = 0;
+        variable.slot = var.slot;
+        statements.add(var);
+        return variable;
+    }
+
+    private static int line(Expr expr) {
+        while (!(expr instanceof Expr.Binary) && !(expr instanceof Expr.Unary)) {
+            expr = ((Expr.Grouping) expr).expression;
+        }
+        if (expr instanceof Expr.Binary) {
+            return ((Expr.Binary) expr).operator.line();
+        }
+        return ((Expr.Unary) expr).operator.line();
+    }
+
+    // 只由字面量、变量和运算组成，并且至少有一个运算，用到的变量在循环里没有被赋值
+    private static boolean isInvariant(Expr expr, Set<String> assigned) {
+        if (expr instanceof Expr.Grouping) {
+            return isInvariant(((Expr.Grouping) expr).expression, assigned);
+        }
+        if (expr instanceof Expr.Unary) {
+            return isOperand(((Expr.Unary) expr).right, assigned);
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            return isOperand(binary.left, assigned) && isOperand(binary.right, assigned);
+        }
+        return false;
+    }
+
+    private static boolean isOperand(Expr expr, Set<String> assigned) {
+        if (expr instanceof Expr.Literal) {
+            return true;
+        }
+        if (expr instanceof Expr.Variable) {
+            return !assigned.contains(((Expr.Variable) expr).name.lexeme);
+        }
+        return isInvariant(expr, assigned);
+    }
+
+    // 求值时不会报错也没有副作用
+    private static boolean isQuiet(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            return isQuiet(((Expr.Grouping) expr).expression);
+        }
+        return expr instanceof Expr.Literal
+                || (expr instanceof Expr.Variable && ((Expr.Variable) expr).depth >= 0);
+    }
+
+    // 收集循环里赋值和声明的名字；有调用或者函数声明时返回 false，
+    // 被调用的函数可能改任何变量，这时什么也不提
+    private static boolean scanLoop(Object node, Set<String> assigned) {
+        if (node instanceof Expr.Call || node instanceof Stmt.Function) {
+            return false;
+        }
+        if (node instanceof Expr.Assign) {
+            assigned.add(((Expr.Assign) node).name.lexeme);
+            return scanLoop(((Expr.Assign) node).value, assigned);
+        }
+        if (node instanceof Expr.Binary) {
+            return scanLoop(((Expr.Binary) node).left, assigned) && scanLoop(((Expr.Binary) node).right, assigned);
+        }
+        if (node instanceof Expr.Logical) {
+            return scanLoop(((Expr.Logical) node).left, assigned) && scanLoop(((Expr.Logical) node).right, assigned);
+        }
+        if (node instanceof Expr.Unary) {
+            return scanLoop(((Expr.Unary) node).right, assigned);
+        }
+        if (node instanceof Expr.Grouping) {
+            return scanLoop(((Expr.Grouping) node).expression, assigned);
+        }
+        if (node instanceof Stmt.Var) {
+            Stmt.Var var = (Stmt.Var) node;
+            assigned.add(var.name.lexeme);
+            return var.initializer == null || scanLoop(var.initializer, assigned);
+        }
+        if (node instanceof Stmt.Block) {
+            for (Stmt statement : ((Stmt.Block) node).statements) {
+                if (!scanLoop(statement, assigned)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (node instanceof Stmt.If) {
+            Stmt.If branch = (Stmt.If) node;
+            return scanLoop(branch.condition, assigned) && scanLoop(branch.thenBranch, assigned)
+                    && (branch.elseBranch == null || scanLoop(branch.elseBranch, assigned));
+        }
+        if (node instanceof Stmt.While) {
+            return scanLoop(((Stmt.While) node).condition, assigned) && scanLoop(((Stmt.While) node).body, assigned);
+        }
+        if (node instanceof Stmt.Expression) {
+            return scanLoop(((Stmt.Expression) node).expression, assigned);
+        }
+        if (node instanceof Stmt.Print) {
+            return scanLoop(((Stmt.Print) node).expression, assigned);
+        }
+        if (node instanceof Stmt.Return) {
+            return scanLoop(((Stmt.Return) node).expr, assigned);
+        }
+        // 字面量和读变量
+        return true;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression instanceof Expr.Literal) {
+            // 没有副作用
+            return null;
+        }
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.keyword, optimize(stmt.expr));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = stmt.initializer == null ? null : optimize(stmt.initializer);
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        Scope scope = new Scope(stmt.locals);
+        scopes.add(scope);
+        Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, statements(stmt.body));
+        scopes.remove(scope);
+        function.slot = stmt.slot;
+        function.locals = scope.locals;
+        function.pooled = stmt.pooled;
+        return function;
+    }
+
+    // 和 Interpreter 里的运算一致；会报错的情况返回 NOT_CONSTANT
+    private static Object fold(TokenType type, Object left, Object right) {
+        switch (type) {
+        case EQUAL_EQUAL:
+            return isEqual(left, right);
+        case BANG_EQUAL:
+            return !isEqual(left, right);
+        case PLUS:
+            if (left instanceof String && right instanceof String) {
+                return (String) left + (String) right;
+            }
+            break;
+        default:
+            break;
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            return NOT_CONSTANT;
+        }
+        double a = (double) left;
+        double b = (double) right;
+        switch (type) {
+        case PLUS:
+            return a + b;
+        case MINUS:
+            return a - b;
+        case STAR:
+            return a * b;
+        case SLASH:
+            // 留给运行时报 divide zero
+            return b == 0 ? NOT_CONSTANT : a / b;
+        case GREATER:
+            return a > b;
+        case GREATER_EQUAL:
+            return a >= b;
+        case LESS:
+            return a < b;
+        case LESS_EQUAL:
+            return a <= b;
+        default:
+            return NOT_CONSTANT;
+        }
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null) {
+            return b == null;
+        }
+        return a.equals(b);
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Double) {
+            return (double) value != 0;
+        }
+        if (value instanceof Boolean) {
+            return (boolean) value;
+        }
+        return true;
+    }
+}
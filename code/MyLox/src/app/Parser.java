@@ -10,102 +10,147 @@ import java.util.List;
  * Parser
  */
 public class Parser {
-    private final List<Token> tokens;
+    // 只拿 token 的下标，放进语法树的 token 才生成 Token 对象
+    private final TokenBuffer tokens;
     private int current = 0;
 
     private static class ParseError extends RuntimeException {
     }
 
-    Parser(List<Token> tokens) {
+    // 二元运算符的优先级，下标是 TokenType 的 ordinal，0 表示不是二元运算符
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+    private static final int OR_PRECEDENCE = 1;
+    private static final int AND_PRECEDENCE = 2;
+
+    static {
+        // equality → comparison ( ( "!=" | "==" ) comparison )* ;
+        // comparison → addition ( ( ">" | ">=" | "<" | "<=" ) addition )* ;
+        // addition → multiplication ( ( "-" | "+" ) multiplication )* ;
+        // multiplication → unary ( ( "/" | "*" ) unary )* ;
+        PRECEDENCE[OR.ordinal()] = OR_PRECEDENCE;
+        PRECEDENCE[AND.ordinal()] = AND_PRECEDENCE;
+        PRECEDENCE[BANG_EQUAL.ordinal()] = 3;
+        PRECEDENCE[EQUAL_EQUAL.ordinal()] = 3;
+        PRECEDENCE[GREATER.ordinal()] = 4;
+        PRECEDENCE[GREATER_EQUAL.ordinal()] = 4;
+        PRECEDENCE[LESS.ordinal()] = 4;
+        PRECEDENCE[LESS_EQUAL.ordinal()] = 4;
+        PRECEDENCE[MINUS.ordinal()] = 5;
+        PRECEDENCE[PLUS.ordinal()] = 5;
+        PRECEDENCE[SLASH.ordinal()] = 6;
+        PRECEDENCE[STAR.ordinal()] = 6;
+    }
+
+    Parser(TokenBuffer tokens) {
         this.tokens = tokens;
     }
 
-    private Token peek() {
-        return tokens.get(current);
+    private int peek() {
+        return current;
+    }
+
+    private Token token(int index) {
+        return tokens.token(index);
+    }
+
+    boolean isAtEnd() {
+        return tokens.type(current) == EOF;
     }
 
-    private boolean isAtEnd() {
-        return peek().type == EOF;
+    int offset() {
+        // 下一个 token 在源码里的位置
+        return tokens.start(current);
+    }
+
+    int line() {
+        // 下一个 token 开头所在的行，跨行的字符串记的是结尾的行，要减回去
+        int line = tokens.line(current);
+        if (tokens.type(current) == STRING) {
+            String lexeme = tokens.lexeme(current);
+            for (int i = 0; i < lexeme.length(); i++) {
+                if (lexeme.charAt(i) == '\n') {
+                    line--;
+                }
+            }
+        }
+        return line;
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) {
             return false;
         }
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
-    private Token previous() {
-        return tokens.get(current - 1);
+    private int previous() {
+        return current - 1;
     }
 
-    private Token advance() {
+    private int advance() {
         if (!isAtEnd()) {
             current++;
+            // 再往前的 token 不会再看了
+            tokens.release(current - 1);
         }
         return previous();
 
     }
 
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
-            }
+    private boolean match(TokenType type) {
+        // 只比较一种，多种的用 switch 或者查表，不用可变参数，省掉每次分配的数组
+        if (check(type)) {
+            advance();
+            return true;
         }
         return false;
     }
 
-    private ParseError error(Token token, String message) {
-        MyLox.error(token, message);
+    private ParseError error(int token, String message) {
+        tokens.errors().error(token(token), message);
         return new ParseError();
     }
 
     private Expr primary() {
         // primary → NUMBER | STRING | "false" | "true" | "nil"
         // | "(" expression ")" ;
-        if (match(FALSE)) {
-            return new Expr.Literal(false);
-        }
-
-        if (match(TRUE)) {
-            return new Expr.Literal(true);
-        }
-
-        if (match(NIL)) {
-            return new Expr.Literal(null);
-        }
-
-        if (match(STRING, NUMBER)) {
-            Token token = previous();
-            return new Expr.Literal(token.literal);
-        }
-
-        if (match(IDENTIFIER)) {
-            Token token = previous();
-            return new Expr.Variable(token);
-        }
-
-        if (match(LEFT_PAREN)) {
-            // 可能是左括号
-            Expr expr = expression();
-            if (match(RIGHT_PAREN)) {
-                return new Expr.Grouping(expr);
-            } else {
+        switch (tokens.type(current)) {
+            case FALSE:
+                advance();
+                return new Expr.Literal(false);
+            case TRUE:
+                advance();
+                return new Expr.Literal(true);
+            case NIL:
+                advance();
+                return new Expr.Literal(null);
+            case STRING:
+            case NUMBER:
+                advance();
+                return new Expr.Literal(tokens.literal(previous()));
+            case IDENTIFIER:
+                advance();
+                return new Expr.Variable(token(previous()));
+            case LEFT_PAREN:
+                // 可能是左括号
+                advance();
+                Expr expr = expression();
+                if (match(RIGHT_PAREN)) {
+                    return new Expr.Grouping(expr);
+                }
                 throw error(peek(), "Expect ')' after expression.");
-            }
-        } else {
-            throw error(peek(), "Expect expression.");
+            default:
+                throw error(peek(), "Expect expression.");
         }
-
     }
 
     private Expr unary() {
         // unary → ( "!" | "-" ) unary
         // | primary ;
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
+        TokenType type = tokens.type(current);
+        if (type == BANG || type == MINUS) {
+            advance();
+            Token operator = token(previous());
             Expr right = unary();
             return new Expr.Unary(operator, right);
         }
@@ -141,7 +186,7 @@ public class Parser {
 
         if (match(RIGHT_PAREN)) {
             // 无参数
-            Token mark = previous();
+            Token mark = token(previous());
             return new Expr.Call(callee, mark, arguments);
         }
 
@@ -156,83 +201,32 @@ public class Parser {
 
         // 匹配最后一个 )
         consume(RIGHT_PAREN, "Expect a ')'.");
-        Token mark = previous();
+        Token mark = token(previous());
         return new Expr.Call(callee, mark, arguments);
     }
 
-    private Expr multiplication() {
-        // multiplication → unary ( ( "/" | "*" ) unary )* ;
+    private Expr binary(int lowest) {
+        // 优先级爬升：左边的操作数后面跟着的运算符优先级不低于 lowest 就接着往下解析，
+        // 右边的操作数只接优先级更高的运算符，所以同一级的运算是左结合的。
+        // 原来按层递归的写法里 and 和 or 各自只接一次，a and b and c 在第二个 and 停下，
+        // 这里也一样：接过一个 and 或者 or 以后只再接优先级更低的
         Expr expr = unary();
-
-        while (match(SLASH, STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr addition() {
-        // addition → multiplication ( ( "-" | "+" ) multiplication )*;
-        Expr expr = multiplication();
-
-        while (match(MINUS, PLUS)) {
-            Token operator = previous();
-            Expr right = multiplication();
-            expr = new Expr.Binary(expr, operator, right);
-
-        }
-
-        return expr;
-    }
-
-    private Expr comparison() {
-        // comparison → addition ( ( ">" | ">=" | "<" | "<=" ) addition )* ;
-        Expr expr = addition();
-
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = addition();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr equality() {
-        // equality → comparison ( ( "!=" | "==" ) comparison )* ;
-        Expr expr = comparison();
-
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr logic_and() {
-        Expr left = equality();
-
-        while (match(AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            return new Expr.Logical(left, operator, right);
-        }
-        return left;
-    }
-
-    private Expr logic_or() {
-        Expr left = logic_and();
-
-        while (match(OR)) {
-            Token operator = previous();
-            Expr right = logic_and();
-            return new Expr.Logical(left, operator, right);
+        int highest = Integer.MAX_VALUE;
+        for (;;) {
+            int precedence = PRECEDENCE[tokens.type(current).ordinal()];
+            if (precedence < lowest || precedence > highest) {
+                return expr;
+            }
+            advance();
+            Token operator = token(previous());
+            Expr right = binary(precedence + 1);
+            if (precedence <= AND_PRECEDENCE) {
+                expr = new Expr.Logical(expr, operator, right);
+                highest = precedence - 1;
+            } else {
+                expr = new Expr.Binary(expr, operator, right);
+            }
         }
-        return left;
     }
 
     private Expr assignment() {
@@ -241,11 +235,12 @@ public class Parser {
         // | logic_or ;
         // logic_or → logic_and ( "or" logic_and )* ;
         // logic_and → equality ( "and" equality )* ;
+        // 往下的几层由 binary 按优先级表解析
         // 左值可能需要计算我们先跳过计算左值
-        Expr expr = logic_or();
+        Expr expr = binary(OR_PRECEDENCE);
 
         if (match(EQUAL)) {
-            Token equal = previous();
+            Token equal = token(previous());
             Expr value = assignment();
             // expr 通过递归，应该得到是一个 Variable，不应该是其他的别的东西
             // 否则报错
@@ -254,7 +249,7 @@ public class Parser {
                 return new Expr.Assign(name, value);
             }
 
-            error(equal, "Invalid assignment target.");
+            tokens.errors().error(equal, "Invalid assignment target.");
 
         }
 
@@ -274,7 +269,7 @@ public class Parser {
         return new Stmt.Print(expr);
     }
 
-    private Token consume(TokenType type, String message) {
+    private int consume(TokenType type, String message) {
         if (check(type)) {
             return advance();
         }
@@ -365,10 +360,11 @@ public class Parser {
     }
 
     private Stmt returnStatement() {
+        Token keyword = token(previous());
         Expr expr = expression();
         consume(SEMICOLON, "Expect ';' after return");
 
-        return new Stmt.Return(expr);
+        return new Stmt.Return(keyword, expr);
     }
     private Stmt statement() {
         if (match(PRINT)) {
@@ -397,7 +393,7 @@ public class Parser {
     private Stmt varDeclaration() {
         // varDecl → "var" IDENTIFIER ( "=" expression )? ";" ;
         // 返回变量声明抽象语法树
-        Token identifier = consume(IDENTIFIER, "After 'var' must be an Identifier");
+        Token identifier = token(consume(IDENTIFIER, "After 'var' must be an Identifier"));
         Expr initializer = null;
 
         if (match(EQUAL)) {
@@ -413,10 +409,10 @@ public class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON)
+            if (tokens.type(previous()) == SEMICOLON)
                 return;
 
-            switch (peek().type) {
+            switch (tokens.type(peek())) {
             case CLASS:
             case FUN:
             case VAR:
@@ -434,7 +430,7 @@ public class Parser {
 
     private Stmt funcDeclaration() {
         // Token name, List<Token> params, List<Stmt> body
-        Token name = consume(IDENTIFIER, "Expect function name.");
+        Token name = token(consume(IDENTIFIER, "Expect function name."));
         consume(LEFT_PAREN, "Expect '(' in function declaration");
 
         List<Token> params = new ArrayList<>();
@@ -450,7 +446,7 @@ public class Parser {
             if (params.size() >= 255) {
                 error(peek(), "Cannot have more than 255 parameters.");
             }
-            Token para = consume(IDENTIFIER, "Expect parameter name.");
+            Token para = token(consume(IDENTIFIER, "Expect parameter name."));
             params.add(para);
         } while (match(COMMA));
 
@@ -460,7 +456,7 @@ public class Parser {
         return new Stmt.Function(name, params, body);
     }
 
-    private Stmt declaration() {
+    Stmt declaration() {
         // 在这里抓错误
         try {
             if (match(VAR)) {
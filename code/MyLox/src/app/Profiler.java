@@ -0,0 +1,292 @@
+package app;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profiler
+ *
+ * -profile 用的解释器：覆盖 evaluate、evaluateDouble、evaluateBoolean、execute 和 executeBody，
+ * 记下每个函数、每个源码行执行了几次，花了多少时间。多个文件的时候行按（文件，行号）分开，
+ * 打印成 文件:行号，函数的名字后面也带上文件名。包含时间算上里面调用的一切，递归的时候只算最外面那一层；
+ * 独占时间减去里面的函数（对函数）或者别的行（对行）。
+ * 同一行上嵌套的节点算作一次进入这一行。执行完以后 report 按独占时间从多到少打印。
+ * 只有树遍历解释器走这条路，-vm、-jit、-nodes 不能和 -profile 一起用。
+ */
+final class Profiler extends Interpreter {
+    // 每张表打印多少行
+    private static final int TOP = 20;
+
+    private static final class Entry {
+        final String name;
+        long count = 0;
+        long inclusive = 0;
+        long exclusive = 0;
+        // 正在执行的层数，递归的时候大于 1
+        int active = 0;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Frames
+     *
+     * 正在计时的函数或者行，子节点结束的时候把自己的时间加到父节点的 children 上
+     */
+    private static final class Frames {
+        Entry[] entries = new Entry[64];
+        long[] starts = new long[64];
+        long[] children = new long[64];
+        int size = 0;
+
+        void push(Entry entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                children = Arrays.copyOf(children, size * 2);
+            }
+            entry.count++;
+            entry.active++;
+            entries[size] = entry;
+            children[size] = 0;
+            starts[size++] = System.nanoTime();
+        }
+
+        void pop() {
+            long elapsed = System.nanoTime() - starts[--size];
+            Entry entry = entries[size];
+            entries[size] = null;
+            entry.exclusive += elapsed - children[size];
+            if (--entry.active == 0) {
+                entry.inclusive += elapsed;
+            }
+            if (size > 0) {
+                children[size - 1] += elapsed;
+            }
+        }
+
+        Entry top() {
+            return entries[size - 1];
+        }
+    }
+
+    private final Map<Stmt.Function, Entry> functions = new IdentityHashMap<>();
+    // 每个文件一张表，下标是行号；单个文件的 key 是 null。按第一次执行到的顺序
+    private final Map<String, Entry[]> files = new LinkedHashMap<>();
+    // 上一次查的文件和它的表。同一个文件的 token 共用一个文件名对象，比较引用就行
+    private String lastFile = null;
+    private Entry[] lines = null;
+    private final Frames functionFrames = new Frames();
+    private final Frames lineFrames = new Frames();
+    private final Entry script = new Entry("<script>");
+    // 当前函数的第一个行帧的位置，进入函数以后第一条语句总是新的一帧
+    private int lineBase = 0;
+
+    Profiler(PrintStream out) {
+        super(out);
+    }
+
+    @Override
+    public void interpret(List<Stmt> statements) {
+        functionFrames.push(script);
+        try {
+            super.interpret(statements);
+        } finally {
+            functionFrames.pop();
+        }
+    }
+
+    @Override
+    Object executeBody(Stmt.Function declaration, Environment environment) {
+        Entry entry = functions.get(declaration);
+        if (entry == null) {
+            entry = new Entry(declaration.name.lexeme + " (" + where(declaration.name) + ")");
+            functions.put(declaration, entry);
+        }
+        int base = lineBase;
+        lineBase = lineFrames.size;
+        functionFrames.push(entry);
+        try {
+            return super.executeBody(declaration, environment);
+        } finally {
+            functionFrames.pop();
+            lineBase = base;
+        }
+    }
+
+    @Override
+    Object execute(Stmt stmt) {
+        if (!enter(token(stmt))) {
+            return super.execute(stmt);
+        }
+        try {
+            return super.execute(stmt);
+        } finally {
+            lineFrames.pop();
+        }
+    }
+
+    @Override
+    Object evaluate(Expr expr) {
+        if (!enter(token(expr))) {
+            return super.evaluate(expr);
+        }
+        try {
+            return super.evaluate(expr);
+        } finally {
+            lineFrames.pop();
+        }
+    }
+
+    // 数值和条件的通道不经过 evaluate，跨行的表达式里后面几行的时间也要算到自己的行上
+
+    @Override
+    double evaluateDouble(Expr expr) {
+        if (!enter(token(expr))) {
+            return super.evaluateDouble(expr);
+        }
+        try {
+            return super.evaluateDouble(expr);
+        } finally {
+            lineFrames.pop();
+        }
+    }
+
+    @Override
+    boolean evaluateBoolean(Expr expr) {
+        if (!enter(token(expr))) {
+            return super.evaluateBoolean(expr);
+        }
+        try {
+            return super.evaluateBoolean(expr);
+        } finally {
+            lineFrames.pop();
+        }
+    }
+
+    private boolean enter(Token token) {
+        // 没有行号，或者还在同一行上，算在已经开始的那一帧里
+        if (token == null) {
+            return false;
+        }
+        Entry entry = entry(token);
+        if (lineFrames.size > lineBase && lineFrames.top() == entry) {
+            return false;
+        }
+        lineFrames.push(entry);
+        return true;
+    }
+
+    private Entry entry(Token token) {
+        String file = token.file();
+        if (lines == null || file != lastFile) {
+            lastFile = file;
+            lines = files.get(file);
+            if (lines == null) {
+                lines = new Entry[256];
+                files.put(file, lines);
+            }
+        }
+        int line = token.line();
+        if (line >= lines.length) {
+            lines = Arrays.copyOf(lines, Math.max(line + 1, lines.length * 2));
+            files.put(file, lines);
+        }
+        Entry entry = lines[line];
+        if (entry == null) {
+            entry = new Entry(where(token));
+            lines[line] = entry;
+        }
+        return entry;
+    }
+
+    private static String where(Token token) {
+        // 单个文件是 line 行号，多个文件是 文件:行号
+        return token.file() == null ? "line " + token.line() : token.file() + ":" + token.line();
+    }
+
+    private static Token token(Stmt stmt) {
+        // 决定语句所在行的 token，代码块没有自己的行，返回 null
+        if (stmt instanceof Stmt.Expression) {
+            return token(((Stmt.Expression) stmt).expression);
+        }
+        if (stmt instanceof Stmt.Print) {
+            return token(((Stmt.Print) stmt).expression);
+        }
+        if (stmt instanceof Stmt.Var) {
+            return ((Stmt.Var) stmt).name;
+        }
+        if (stmt instanceof Stmt.If) {
+            return token(((Stmt.If) stmt).condition);
+        }
+        if (stmt instanceof Stmt.While) {
+            return token(((Stmt.While) stmt).condition);
+        }
+        if (stmt instanceof Stmt.Return) {
+            return ((Stmt.Return) stmt).keyword;
+        }
+        if (stmt instanceof Stmt.Function) {
+            return ((Stmt.Function) stmt).name;
+        }
+        return null;
+    }
+
+    private static Token token(Expr expr) {
+        // 表达式里第一个带着 token 的节点，只有字面量的时候返回 null
+        while (expr instanceof Expr.Grouping) {
+            expr = ((Expr.Grouping) expr).expression;
+        }
+        if (expr instanceof Expr.Binary) {
+            return ((Expr.Binary) expr).operator;
+        }
+        if (expr instanceof Expr.Logical) {
+            return ((Expr.Logical) expr).operator;
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator;
+        }
+        if (expr instanceof Expr.Call) {
+            return ((Expr.Call) expr).mark;
+        }
+        if (expr instanceof Expr.Variable) {
+            return ((Expr.Variable) expr).name;
+        }
+        if (expr instanceof Expr.Assign) {
+            return ((Expr.Assign) expr).name;
+        }
+        return null;
+    }
+
+    void report(PrintStream out) {
+        // 时间是毫秒
+        List<Entry> called = new ArrayList<>(functions.values());
+        called.add(script);
+        table(out, "function", called);
+        List<Entry> executed = new ArrayList<>();
+        for (Entry[] table : files.values()) {
+            for (Entry entry : table) {
+                if (entry != null) {
+                    executed.add(entry);
+                }
+            }
+        }
+        table(out, "line", executed);
+    }
+
+    private static void table(PrintStream out, String column, List<Entry> entries) {
+        entries.sort((a, b) -> Long.compare(b.exclusive, a.exclusive));
+        out.printf("%-32s %12s %12s %12s%n", column, "calls", "incl ms", "excl ms");
+        for (int i = 0; i < entries.size() && i < TOP; i++) {
+            Entry entry = entries.get(i);
+            out.printf("%-32s %12d %12.3f %12.3f%n", entry.name, entry.count, entry.inclusive / 1e6,
+                    entry.exclusive / 1e6);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolver
+ *
+ * 在 Parser 和 Interpreter 之间走一遍语法树，为每个局部变量算出
+ * (depth, slot)：depth 是从使用处向外数几层作用域，slot 是它在那一层数组里的下标。
+ * 没有找到的变量当作全局变量，depth 保持 -1，运行时按名字查找。
+ * 一个作用域里声明的函数事先占好位置，里面的函数可以调用后面才声明的兄弟函数（包括互相递归）；
+ * 作用域里直接执行的代码还是只看得到已经声明过的。
+ * 顺便做逃逸分析：作用域里（包括更里面的块）没有声明函数，环境就不会被闭包留住，
+ * 标记成 pooled，运行时从 Interpreter 的帧栈里借，用完还回去。
+ */
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static class Scope {
+        final Map<String, Integer> slots = new HashMap<>();
+        // 事先占好位置、还没走到声明的函数名，只有更里面的函数看得到
+        final Set<String> pending = new HashSet<>();
+        // 创建这个作用域时的 functionDepth
+        final int functionDepth;
+        // 里面声明了函数，闭包会通过作用域链留住这个环境
+        boolean captured = false;
+
+        int declare(String name) {
+            // 同一个作用域里重复声明，沿用原来的位置
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+
+        Scope(int functionDepth) {
+            this.functionDepth = functionDepth;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+    private int functionDepth = 0;
+    // 嵌入的时候换成收集错误的 ErrorReporter，不打印也不碰 MyLox.hadError
+    ErrorReporter errors = ErrorReporter.STDERR;
+    // resolveLocal 找到的 slot
+    private int foundSlot = -1;
+    // 全局变量名的编号，同名的全局变量用同一个编号
+    private final Map<String, Integer> globals = new HashMap<>();
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        if (stmt != null) {
+            stmt.accept(this);
+        }
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(new Scope(functionDepth));
+    }
+
+    private Scope endScope() {
+        // slots 的个数就是这个作用域需要的数组大小
+        return scopes.remove(scopes.size() - 1);
+    }
+
+    private int declare(Token name) {
+        if (scopes.isEmpty()) {
+            // 全局变量
+            return -1;
+        }
+        Scope scope = scopes.get(scopes.size() - 1);
+        scope.pending.remove(name.lexeme);
+        return scope.declare(name.lexeme);
+    }
+
+    private void declareFunctions(List<Stmt> statements) {
+        // 函数体要到调用的时候才执行，那时候后面的兄弟函数可能已经声明了
+        if (scopes.isEmpty()) {
+            return;
+        }
+        Scope scope = scopes.get(scopes.size() - 1);
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function) {
+                String name = ((Stmt.Function) statement).name.lexeme;
+                if (!scope.slots.containsKey(name)) {
+                    scope.declare(name);
+                    scope.pending.add(name);
+                }
+            }
+        }
+    }
+
+    private int resolveLocal(Token name) {
+        // 从内向外找，返回 depth，slot 放在 foundSlot 里
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            Integer found = scope.slots.get(name.lexeme);
+            if (found != null && scope.pending.contains(name.lexeme) && functionDepth <= scope.functionDepth) {
+                // 还没声明的函数，这里的代码现在就会执行，看不到它
+                continue;
+            }
+            if (found != null) {
+                foundSlot = found;
+                return scopes.size() - 1 - i;
+            }
+        }
+        // 全局变量：slot 是名字的编号，运行时用来找全局环境里缓存的 Binding
+        foundSlot = globals.computeIfAbsent(name.lexeme, lexeme -> globals.size());
+        return -1;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (!declares(stmt.statements)) {
+            // 没有声明的代码块（比如 for 循环的循环体）不需要自己的作用域，
+            // locals 为 0，运行时也不创建 Environment
+            resolve(stmt.statements);
+            stmt.locals = 0;
+            return null;
+        }
+        beginScope();
+        declareFunctions(stmt.statements);
+        resolve(stmt.statements);
+        Scope scope = endScope();
+        stmt.locals = scope.slots.size();
+        stmt.pooled = !scope.captured;
+        return null;
+    }
+
+    private static boolean declares(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var || statement instanceof Stmt.Function) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // 先声明函数名，函数体里才能递归调用自己
+        stmt.slot = declare(stmt.name);
+        // 闭包拿着的是整条作用域链，按 depth 往外走的时候每一层都要经过，外面的作用域都不能借给别人
+        for (Scope scope : scopes) {
+            scope.captured = true;
+        }
+
+        functionDepth++;
+        beginScope();
+        for (Token param : stmt.params) {
+            // 参数按顺序占据前面的 slot，不能重名
+            if (scopes.get(scopes.size() - 1).slots.containsKey(param.lexeme)) {
+                errors.error(param, "Duplicate parameter name.");
+            }
+            declare(param);
+        }
+        // 函数体和参数在同一个环境中执行
+        declareFunctions(stmt.body);
+        resolve(stmt.body);
+        Scope scope = endScope();
+        stmt.locals = scope.slots.size();
+        stmt.pooled = !scope.captured;
+        functionDepth--;
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (functionDepth == 0) {
+            errors.error(stmt.keyword, "Cannot return from top-level code.");
+        }
+        resolve(stmt.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // 先计算初始值，var a = a; 里右边的 a 指的是外层的 a
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        stmt.slot = declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        expr.depth = resolveLocal(expr.name);
+        expr.slot = foundSlot;
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        expr.depth = resolveLocal(expr.name);
+        expr.slot = foundSlot;
+        return null;
+    }
+}
@@ -0,0 +1,20 @@
+package app;
+
+/**
+ * ScriptError
+ *
+ * 嵌入 MyLox 的时候报告给宿主的错误。编译错误的信息是全部的错误，一行一个，
+ * 和命令行打印的一样；运行时错误带着出错的行，编译错误的 line 是 0。
+ */
+public class ScriptError extends RuntimeException {
+    private final int line;
+
+    ScriptError(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+
+    public int line() {
+        return line;
+    }
+}
@@ -0,0 +1,42 @@
+package app;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ScriptThreads
+ *
+ * 给宿主同时执行很多个 CompiledScript.eval 用的线程。JDK 21 以后每个任务一个虚拟线程，
+ * 成千上万个同时等着 I/O 的调用也不用同样多的平台线程；
+ * 编译用的 JDK 17 还没有这个方法，所以通过反射找，找不到就退回到每个处理器一个线程的线程池。
+ */
+public final class ScriptThreads {
+    private ScriptThreads() {
+    }
+
+    public static boolean virtual() {
+        return factory() != null;
+    }
+
+    public static ExecutorService newExecutor() {
+        Method factory = factory();
+        if (factory != null) {
+            try {
+                return (ExecutorService) factory.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                // 和没有虚拟线程一样处理
+            }
+        }
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static Method factory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
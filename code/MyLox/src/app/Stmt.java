@@ -2,10 +2,10 @@ package app;
 
 import java.util.List;
 
-abstract class Stmt {
-    abstract <R> R accept(Visitor<R> visitor);
+public abstract class Stmt {
+    public abstract <R> R accept(Visitor<R> visitor);
 
-    interface Visitor<R> {
+    public interface Visitor<R> {
         R visitBlockStmt(Block stmt);
 
         R visitIfStmt(If stmt);
@@ -23,111 +23,122 @@ abstract class Stmt {
         R visitVarStmt(Var stmt);
     }
 
-    static class Block extends Stmt {
+    public static class Block extends Stmt {
         Block(List<Stmt> statements) {
             this.statements = statements;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
         }
 
-        final List<Stmt> statements;
+        public final List<Stmt> statements;
+
+        int locals = 0;
+        boolean pooled = false;
     }
 
-    static class If extends Stmt {
+    public static class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitIfStmt(this);
         }
 
-        final Expr condition;
-        final Stmt thenBranch;
-        final Stmt elseBranch;
+        public final Expr condition;
+        public final Stmt thenBranch;
+        public final Stmt elseBranch;
     }
 
-    static class While extends Stmt {
+    public static class While extends Stmt {
         While(Expr condition, Stmt body) {
             this.condition = condition;
             this.body = body;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitWhileStmt(this);
         }
 
-        final Expr condition;
-        final Stmt body;
+        public final Expr condition;
+        public final Stmt body;
     }
 
-    static class Expression extends Stmt {
+    public static class Expression extends Stmt {
         Expression(Expr expression) {
             this.expression = expression;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitExpressionStmt(this);
         }
 
-        final Expr expression;
+        public final Expr expression;
     }
 
-    static class Print extends Stmt {
+    public static class Print extends Stmt {
         Print(Expr expression) {
             this.expression = expression;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitPrintStmt(this);
         }
 
-        final Expr expression;
+        public final Expr expression;
     }
 
-    static class Function extends Stmt {
+    public static class Function extends Stmt {
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
             this.params = params;
             this.body = body;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
         }
 
-        final Token name;
-        final List<Token> params;
-        final List<Stmt> body;
+        public final Token name;
+        public final List<Token> params;
+        public final List<Stmt> body;
+
+        int slot = -1;
+        int locals = 0;
+        boolean pooled = false;
     }
 
-    static class Return extends Stmt {
-        Return(Expr expr) {
+    public static class Return extends Stmt {
+        Return(Token keyword, Expr expr) {
+            this.keyword = keyword;
             this.expr = expr;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitReturnStmt(this);
         }
 
-        final Expr expr;
+        public final Token keyword;
+        public final Expr expr;
     }
 
-    static class Var extends Stmt {
+    public static class Var extends Stmt {
         Var(Token name, Expr initializer) {
             this.name = name;
             this.initializer = initializer;
         }
 
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
         }
 
-        final Token name;
-        final Expr initializer;
+        public final Token name;
+        public final Expr initializer;
+
+        int slot = -1;
     }
 }
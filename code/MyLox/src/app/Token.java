@@ -0,0 +1,81 @@
+package app;
+
+public class Token {
+    public final TokenType type;
+    public final String lexeme;
+    public final Object literal;
+    // 有 anchor 的时候存的是相对 anchor 的行号，
+    // 前面的源码改了行数以后只要挪 anchor，不用改每个 token
+    private final int line;
+    private final Anchor anchor;
+
+    Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, null);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, Anchor anchor) {
+        this.type = type;
+        this.lexeme = lexeme;
+        this.literal = literal;
+        this.line = anchor == null ? line : line - anchor.line();
+        this.anchor = anchor;
+    }
+
+    public int line() {
+        return anchor == null ? line : anchor.line() + line;
+    }
+
+    public String file() {
+        // 多个文件连成一个程序以后，报错要带上 token 来自哪个文件；单个文件是 null
+        return anchor == null ? null : anchor.file();
+    }
+
+    public String toString() {
+        return type + " " + lexeme + " " + literal;
+    }
+
+    /**
+     * Anchor
+     *
+     * 一段源码开头所在的行。有 parent 的时候 line 是相对 parent 的，
+     * 挪 parent 就挪了挂在它下面的所有 anchor。最外层的 anchor 可以带一个文件名
+     */
+    static final class Anchor {
+        Anchor parent;
+        int line;
+        private final String file;
+
+        Anchor(int line) {
+            this(null, null, line);
+        }
+
+        Anchor(Anchor parent, int line) {
+            this(parent, null, line);
+        }
+
+        Anchor(String file, int line) {
+            this(null, file, line);
+        }
+
+        private Anchor(Anchor parent, String file, int line) {
+            this.parent = parent;
+            this.file = file;
+            this.line = parent == null ? line : line - parent.line();
+        }
+
+        int line() {
+            return parent == null ? line : parent.line() + line;
+        }
+
+        String file() {
+            return parent == null ? file : parent.file();
+        }
+
+        void reparent(Anchor parent) {
+            // 换一个 parent，行号不变
+            int line = line();
+            this.parent = parent;
+            this.line = line - parent.line();
+        }
+    }
+}
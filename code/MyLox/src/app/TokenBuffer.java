@@ -0,0 +1,142 @@
+package app;
+
+import static app.TokenType.EOF;
+import static app.TokenType.NUMBER;
+import static app.TokenType.STRING;
+
+import java.util.Arrays;
+
+/**
+ * TokenBuffer
+ *
+ * 紧凑的 token 序列：类型、起始位置、长度、行号分别放在几个 int 数组里，
+ * 起始位置是在原始源码里的偏移。Parser 只拿下标，lexeme 和 Token 对象
+ * 等到放进语法树或者报错的时候才生成。
+ * token 按需向 Lexer 要；Parser 用完的 token 会被丢掉，数组不会一直变长。
+ */
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Lexer lexer;
+    // 下标为 index 的 token 放在数组的 index - first 处
+    private int[] types = new int[64];
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private int[] lines = new int[64];
+    private int first = 0;
+    // 已经扫描出来的 token 个数
+    private int count = 0;
+    // 下标小于 released 的 token 不会再用到
+    private int released = 0;
+    private boolean finished = false;
+    // 不为空的时候生成的 Token 行号相对这个 anchor
+    private Token.Anchor anchor = null;
+
+    TokenBuffer(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        int at = count - first;
+        if (at == types.length) {
+            at = makeRoom();
+        }
+        types[at] = type.ordinal();
+        starts[at] = start;
+        lengths[at] = length;
+        lines[at] = line;
+        count++;
+        if (type == EOF) {
+            finished = true;
+        }
+    }
+
+    private int makeRoom() {
+        // 先丢掉用不到的 token，腾不出一半的地方就扩容
+        int drop = released - first;
+        int live = count - released;
+        if (drop > 0) {
+            System.arraycopy(types, drop, types, 0, live);
+            System.arraycopy(starts, drop, starts, 0, live);
+            System.arraycopy(lengths, drop, lengths, 0, live);
+            System.arraycopy(lines, drop, lines, 0, live);
+            first = released;
+        }
+        if (live * 2 > types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        return live;
+    }
+
+    void release(int index) {
+        // index 之前的 token 可以丢掉了
+        if (index > released) {
+            released = Math.min(index, count);
+        }
+    }
+
+    int keep() {
+        // 还留着的 token 里最早的起始位置，Lexer 在这之前的字符都可以丢掉
+        if (released == count) {
+            return Integer.MAX_VALUE;
+        }
+        return starts[released - first];
+    }
+
+    private int at(int index) {
+        while (count <= index && !finished) {
+            lexer.scan();
+        }
+        // EOF 之后一直是 EOF
+        return Math.min(index, count - 1) - first;
+    }
+
+    TokenType type(int index) {
+        // 先扫描到 index，数组可能会换掉
+        int at = at(index);
+        return TYPES[types[at]];
+    }
+
+    int start(int index) {
+        int at = at(index);
+        return starts[at];
+    }
+
+    int line(int index) {
+        int at = at(index);
+        return lines[at];
+    }
+
+    String lexeme(int index) {
+        int at = at(index);
+        return lexer.text(starts[at], lengths[at]);
+    }
+
+    Object literal(int index) {
+        // 字符串的值带着引号，和 lexeme 一样
+        TokenType type = type(index);
+        if (type == NUMBER) {
+            return Double.parseDouble(lexeme(index));
+        }
+        if (type == STRING) {
+            return lexeme(index);
+        }
+        return null;
+    }
+
+    ErrorReporter errors() {
+        return lexer.errors;
+    }
+
+    void anchor(Token.Anchor anchor) {
+        this.anchor = anchor;
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), line(index), anchor);
+    }
+}
@@ -0,0 +1,26 @@
+package app.jit;
+
+import java.util.Arrays;
+
+/**
+ * Label
+ *
+ * 跳转目标。可以先跳转再放置，MethodWriter 在放置时回填偏移。
+ */
+public final class Label {
+    // 在代码里的位置，-1 表示还没放置
+    int position = -1;
+    // 跳到这里时的栈深度，-1 表示还不知道
+    int stack = -1;
+    // 还没回填的跳转：指令位置和偏移所在位置，两个一组
+    int[] fixups = new int[4];
+    int fixupCount = 0;
+
+    void addFixup(int instruction, int offset) {
+        if (fixupCount == fixups.length) {
+            fixups = Arrays.copyOf(fixups, fixupCount * 2);
+        }
+        fixups[fixupCount++] = instruction;
+        fixups[fixupCount++] = offset;
+    }
+}
@@ -0,0 +1,331 @@
+package app.jit;
+
+import static app.jit.Opcodes.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * MethodWriter
+ *
+ * 写一个方法的字节码。写的同时跟踪操作数栈深度和用到的局部变量，
+ * 最后算出 max_stack 和 max_locals。
+ * 分支两边的栈深度要一致，这一点由调用者保证。
+ */
+public final class MethodWriter {
+    private final ClassWriter owner;
+    private final int access;
+    private final int name;
+    private final int descriptor;
+
+    private byte[] code = new byte[256];
+    private int length = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+    // 上一条指令是 goto、return 或 athrow，接下来的代码只能从跳转到达
+    private boolean unreachable = false;
+
+    MethodWriter(ClassWriter owner, int access, String name, String descriptor) {
+        this.owner = owner;
+        this.access = access;
+        this.name = owner.utf8(name);
+        this.descriptor = owner.utf8(descriptor);
+        // 参数占的局部变量，实例方法还有 this
+        this.maxLocals = argumentSlots(descriptor) + ((access & ACC_STATIC) != 0 ? 0 : 1);
+    }
+
+    private void put(int b) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) b;
+    }
+
+    private void putShort(int value) {
+        put(value >> 8);
+        put(value);
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        if (stack < 0) {
+            throw new IllegalStateException("Operand stack underflow.");
+        }
+        if (stack > maxStack) {
+            maxStack = stack;
+        }
+    }
+
+    private void useLocal(int index, int size) {
+        if (index + size > maxLocals) {
+            maxLocals = index + size;
+        }
+    }
+
+    private static int stackEffect(int opcode) {
+        // 没有操作数的指令对栈的影响
+        switch (opcode) {
+        case NOP:
+        case SWAP:
+        case DNEG:
+        case ARRAYLENGTH:
+        case RETURN:
+            return 0;
+        case ACONST_NULL:
+        case ICONST_M1:
+        case ICONST_0:
+        case ICONST_1:
+        case ICONST_2:
+        case ICONST_3:
+        case ICONST_4:
+        case ICONST_5:
+        case DUP:
+        case DUP_X1:
+        case DUP_X2:
+            return 1;
+        case DCONST_0:
+        case DCONST_1:
+        case DUP2:
+        case DUP2_X1:
+        case DUP2_X2:
+            return 2;
+        case POP:
+        case AALOAD:
+        case IADD:
+        case IXOR:
+        case IRETURN:
+        case ARETURN:
+        case ATHROW:
+            return -1;
+        case POP2:
+        case DADD:
+        case DSUB:
+        case DMUL:
+        case DDIV:
+        case DRETURN:
+            return -2;
+        case DCMPL:
+        case DCMPG:
+        case AASTORE:
+            return -3;
+        default:
+            throw new IllegalArgumentException("Unsupported opcode " + opcode + ".");
+        }
+    }
+
+    public void insn(int opcode) {
+        put(opcode);
+        adjust(stackEffect(opcode));
+        if (opcode == ATHROW || (opcode >= IRETURN && opcode <= RETURN)) {
+            unreachable = true;
+        }
+    }
+
+    public void push(int value) {
+        if (value >= -1 && value <= 5) {
+            insn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            put(BIPUSH);
+            put(value);
+            adjust(1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            put(SIPUSH);
+            putShort(value);
+            adjust(1);
+        } else {
+            ldc(owner.integer(value), 1);
+        }
+    }
+
+    public void push(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            insn(DCONST_0);
+        } else if (value == 1.0) {
+            insn(DCONST_1);
+        } else {
+            put(LDC2_W);
+            putShort(owner.doubleConstant(value));
+            adjust(2);
+        }
+    }
+
+    public void push(String value) {
+        ldc(owner.string(value), 1);
+    }
+
+    private void ldc(int index, int size) {
+        if (index <= 0xff) {
+            put(LDC);
+            put(index);
+        } else {
+            put(LDC_W);
+            putShort(index);
+        }
+        adjust(size);
+    }
+
+    public void varInsn(int opcode, int index) {
+        int size = opcode == DLOAD || opcode == DSTORE ? 2 : 1;
+        if (index > 0xff) {
+            // wide
+            put(196);
+            put(opcode);
+            putShort(index);
+        } else {
+            put(opcode);
+            put(index);
+        }
+        useLocal(index, size);
+        adjust(opcode < ISTORE ? size : -size);
+    }
+
+    public void typeInsn(int opcode, String type) {
+        put(opcode);
+        putShort(owner.classRef(type));
+        // new 压一个引用，anewarray、checkcast、instanceof 都是弹一个压一个
+        adjust(opcode == NEW ? 1 : 0);
+    }
+
+    public void fieldInsn(int opcode, String fieldOwner, String fieldName, String fieldDescriptor) {
+        put(opcode);
+        putShort(owner.fieldRef(fieldOwner, fieldName, fieldDescriptor));
+        int size = typeSize(fieldDescriptor.charAt(0));
+        switch (opcode) {
+        case GETSTATIC:
+            adjust(size);
+            break;
+        case PUTSTATIC:
+            adjust(-size);
+            break;
+        case GETFIELD:
+            adjust(size - 1);
+            break;
+        default:
+            adjust(-size - 1);
+            break;
+        }
+    }
+
+    public void methodInsn(int opcode, String methodOwner, String methodName, String methodDescriptor) {
+        put(opcode);
+        int arguments = argumentSlots(methodDescriptor);
+        if (opcode == INVOKEINTERFACE) {
+            putShort(owner.interfaceMethodRef(methodOwner, methodName, methodDescriptor));
+            put(arguments + 1);
+            put(0);
+        } else {
+            putShort(owner.methodRef(methodOwner, methodName, methodDescriptor));
+        }
+        int result = typeSize(methodDescriptor.charAt(methodDescriptor.indexOf(')') + 1));
+        adjust(-arguments - (opcode == INVOKESTATIC ? 0 : 1) + result);
+    }
+
+    public void jump(int opcode, Label label) {
+        int instruction = length;
+        put(opcode);
+        if (opcode == IF_ICMPEQ || opcode == IF_ICMPNE || opcode == IF_ACMPEQ || opcode == IF_ACMPNE) {
+            adjust(-2);
+        } else if (opcode != GOTO) {
+            adjust(-1);
+        }
+        if (label.stack < 0) {
+            label.stack = stack;
+        } else if (label.stack != stack) {
+            throw new IllegalStateException("Inconsistent stack height at jump.");
+        }
+        if (label.position >= 0) {
+            putShort(offset(instruction, label.position));
+        } else {
+            label.addFixup(instruction, length);
+            putShort(0);
+        }
+        if (opcode == GOTO) {
+            unreachable = true;
+        }
+    }
+
+    public void mark(Label label) {
+        label.position = length;
+        if (unreachable) {
+            // 只能从跳转到达，栈深度以跳转处为准
+            stack = Math.max(label.stack, 0);
+            unreachable = false;
+        } else if (label.stack < 0) {
+            label.stack = stack;
+        } else if (label.stack != stack) {
+            throw new IllegalStateException("Inconsistent stack height at label.");
+        }
+        for (int i = 0; i < label.fixupCount; i += 2) {
+            int offset = offset(label.fixups[i], length);
+            code[label.fixups[i + 1]] = (byte) (offset >> 8);
+            code[label.fixups[i + 1] + 1] = (byte) offset;
+        }
+        label.fixupCount = 0;
+    }
+
+    private static int offset(int from, int to) {
+        int offset = to - from;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new IllegalStateException("Method too large.");
+        }
+        return offset;
+    }
+
+    private static int typeSize(char type) {
+        switch (type) {
+        case 'V':
+            return 0;
+        case 'D':
+        case 'J':
+            return 2;
+        default:
+            return 1;
+        }
+    }
+
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            slots += typeSize(c);
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+        }
+        return slots;
+    }
+
+    byte[] toByteArray(int codeAttribute) {
+        if (length > 0xffff) {
+            throw new IllegalStateException("Method too large.");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            // max_stack、max_locals、code_length、code、异常表长度、属性个数
+            out.writeInt(2 + 2 + 4 + length + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,163 @@
+package app.script;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import app.MyLox;
+import app.ScriptError;
+
+/**
+ * LoxScriptEngine
+ *
+ * JSR-223 的适配层，只用 MyLox.compile 和 app.CompiledScript 这两个公开的入口。
+ * 全局作用域和引擎作用域的变量都成为脚本的全局变量，引擎作用域里的同名变量优先；
+ * 执行完以后脚本的全局变量写回引擎作用域，只在全局作用域里、脚本也没改的不写。
+ * print 的输出写到 ScriptContext 的 Writer。
+ */
+public final class LoxScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final ScriptEngineFactory factory;
+
+    LoxScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Compiled
+     *
+     * 编译好的脚本，每次 eval 用传进来的 ScriptContext 里的变量执行
+     */
+    private final class Compiled extends CompiledScript {
+        private final app.CompiledScript script;
+
+        Compiled(app.CompiledScript script) {
+            this.script = script;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Bindings engine = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+            Map<String, Object> bindings = new HashMap<>();
+            if (global != null) {
+                bindings.putAll(global);
+            }
+            bindings.putAll(engine);
+
+            Object result;
+            try {
+                result = script.eval(bindings, new WriterStream(context.getWriter()));
+            } catch (ScriptError error) {
+                throw exception(error);
+            }
+            bindings.forEach((name, value) -> {
+                // 全局作用域的值进出一趟会换类型（Integer 变 Double），和换过以后的比
+                if (engine.containsKey(name) || global == null || !global.containsKey(name)
+                        || !Objects.equals(app.CompiledScript.hostValue(global.get(name)), value)) {
+                    engine.put(name, value);
+                }
+            });
+            return result;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return LoxScriptEngine.this;
+        }
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        try {
+            return new Compiled(MyLox.compile(script));
+        } catch (ScriptError error) {
+            throw exception(error);
+        }
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * WriterStream
+     *
+     * 脚本的 print 只调用 println(String)，转给 ScriptContext 的 Writer
+     */
+    private static final class WriterStream extends PrintStream {
+        private final Writer writer;
+
+        WriterStream(Writer writer) {
+            super(OutputStream.nullOutputStream());
+            this.writer = writer;
+        }
+
+        @Override
+        public void println(String line) {
+            try {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+                writer.flush();
+            } catch (IOException e) {
+                setError();
+            }
+        }
+    }
+
+    private static ScriptException exception(ScriptError error) {
+        // 编译错误的 line 是 0，信息里已经带着每个错误的行
+        if (error.line() == 0) {
+            return new ScriptException(error.getMessage());
+        }
+        return new ScriptException(error.getMessage(), null, error.line());
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int read; (read = reader.read(buffer)) >= 0;) {
+                text.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return text.toString();
+    }
+}
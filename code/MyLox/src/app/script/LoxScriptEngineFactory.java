@@ -0,0 +1,97 @@
+package app.script;
+
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * LoxScriptEngineFactory
+ *
+ * 通过 META-INF/services/javax.script.ScriptEngineFactory 注册，
+ * ScriptEngineManager 按名字 mylox、lox 或者扩展名 lox 都能找到。
+ */
+public final class LoxScriptEngineFactory implements ScriptEngineFactory {
+    private static final List<String> NAMES = List.of("mylox", "lox");
+    private static final List<String> EXTENSIONS = List.of("lox");
+    private static final List<String> MIME_TYPES = List.of("application/x-lox");
+
+    @Override
+    public String getEngineName() {
+        return "MyLox";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Lox";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+        case ScriptEngine.NAME:
+            return NAMES.get(0);
+        case ScriptEngine.ENGINE:
+            return getEngineName();
+        case ScriptEngine.ENGINE_VERSION:
+            return getEngineVersion();
+        case ScriptEngine.LANGUAGE:
+            return getLanguageName();
+        case ScriptEngine.LANGUAGE_VERSION:
+            return getLanguageVersion();
+        default:
+            // THREADING 是 null：引擎作用域的 Bindings 大家共用，不能在多个线程里同时 eval；
+            // 编译好的脚本各个线程用自己的 ScriptContext 执行是可以的
+            return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... args) {
+        return object + "." + method + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement).append(";\n");
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new LoxScriptEngine(this);
+    }
+}
@@ -0,0 +1,71 @@
+package app.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk
+ *
+ * 一段指令和它的常量池。lines 记录每个 int 对应的源代码行号，files 记录所在的文件，用来报错。
+ */
+public final class Chunk {
+    int[] code = new int[64];
+    int[] lines = new int[64];
+    // 多个文件连成的程序里顶层的指令来自不同的文件；单个文件的时候都是 null
+    String[] files = new String[64];
+    int count = 0;
+
+    // 常量池。数字常量在 constants 里放 VM.NUMBER，值放在 numbers 里，
+    // 这样 LOADK 和带 K 的运算不需要拆箱
+    Object[] constants = new Object[0];
+    double[] numbers = new double[0];
+
+    private final List<Object> pool = new ArrayList<>();
+    private final Map<Object, Integer> poolIndex = new HashMap<>();
+
+    void write(int value, int line, String file) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+            files = Arrays.copyOf(files, count * 2);
+        }
+        code[count] = value;
+        lines[count] = line;
+        files[count] = file;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        // 数字和字符串可以复用同一个常量，函数每次都新加
+        if (value instanceof Double || value instanceof String) {
+            Integer index = poolIndex.get(value);
+            if (index != null) {
+                return index;
+            }
+            poolIndex.put(value, pool.size());
+        }
+        pool.add(value);
+        return pool.size() - 1;
+    }
+
+    void seal() {
+        // 编译结束，把常量池转成 VM 直接使用的数组
+        code = Arrays.copyOf(code, count);
+        lines = Arrays.copyOf(lines, count);
+        files = Arrays.copyOf(files, count);
+        constants = new Object[pool.size()];
+        numbers = new double[pool.size()];
+        for (int i = 0; i < pool.size(); i++) {
+            Object value = pool.get(i);
+            if (value instanceof Double) {
+                constants[i] = VM.NUMBER;
+                numbers[i] = (double) value;
+            } else {
+                constants[i] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package app.vm;
+
+/**
+ * CompileError
+ *
+ * 超出虚拟机限制时抛出，比如一个函数用到的寄存器太多。
+ */
+public class CompileError extends RuntimeException {
+    public final int line;
+    // 多个文件的时候是出错的文件，单个文件是 null
+    public final String file;
+
+    CompileError(String file, int line, String message) {
+        super(message);
+        this.line = line;
+        this.file = file;
+    }
+}
@@ -0,0 +1,696 @@
+package app.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import app.Expr;
+import app.Stmt;
+import app.Token;
+import app.TokenType;
+
+/**
+ * Compiler
+ *
+ * 把 Parser 得到的语法树编译成寄存器式指令。每个函数的局部变量按声明顺序
+ * 占据前面的寄存器，表达式的中间结果放在它们上面的临时寄存器里。
+ * 被内层函数引用的变量通过 upvalue 捕获，做法和 clox 一样。
+ * 和 Resolver 一样，作用域里声明的函数在作用域开始时就占好寄存器，里面的函数可以引用后面的兄弟函数。
+ */
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_REGISTERS = 1 << 16;
+
+    private static final class Local {
+        final String name;
+        final int depth;
+        boolean captured = false;
+        // 事先占好寄存器、还没走到声明的函数，只有内层函数看得到
+        boolean pending = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static final class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    // 每个正在编译的函数一个
+    private static final class FunctionState {
+        final FunctionState enclosing;
+        final ObjFunction function;
+        // 下标就是寄存器编号
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        // 第一个空闲的寄存器，语句结束时回到 locals.size()
+        int freeRegister = 1;
+
+        FunctionState(FunctionState enclosing, ObjFunction function) {
+            this.enclosing = enclosing;
+            this.function = function;
+            // 寄存器 0 留给被调用的函数自己
+            locals.add(new Local("", 0));
+        }
+    }
+
+    private FunctionState current;
+    // 最近一次看到的 token 所在的行和文件，单个文件的时候文件是 null
+    private int line = 1;
+    private String file = null;
+    // 当前表达式的结果要放到哪个寄存器，-1 表示不需要结果
+    private int target = -1;
+
+    public ObjFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new ObjFunction(null));
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        return endFunction();
+    }
+
+    private ObjFunction endFunction() {
+        emit(OpCode.RETURNNIL);
+        ObjFunction function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        function.chunk.seal();
+        current = current.enclosing;
+        return function;
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    private void at(Token token) {
+        line = token.line();
+        file = token.file();
+    }
+
+    private void emit(int value) {
+        chunk().write(value, line, file);
+    }
+
+    private void emit(int op, int a) {
+        emit(op);
+        emit(a);
+    }
+
+    private void emit(int op, int a, int b) {
+        emit(op);
+        emit(a);
+        emit(b);
+    }
+
+    private void emit(int op, int a, int b, int c) {
+        emit(op);
+        emit(a);
+        emit(b);
+        emit(c);
+    }
+
+    private int emitJump() {
+        // 先占住跳转目标，返回它的位置，等 patchJump 回填
+        emit(-1);
+        return chunk().count - 1;
+    }
+
+    private void patchJump(int position) {
+        chunk().code[position] = chunk().count;
+    }
+
+    private int makeConstant(Object value) {
+        return chunk().addConstant(value);
+    }
+
+    private int allocRegister() {
+        int register = current.freeRegister++;
+        if (current.freeRegister > MAX_REGISTERS) {
+            throw new CompileError(file, line, "Too many registers in function.");
+        }
+        if (current.freeRegister > current.function.maxRegisters) {
+            current.function.maxRegisters = current.freeRegister;
+        }
+        return register;
+    }
+
+    private void expression(Expr expr, int register) {
+        int saved = target;
+        target = register;
+        expr.accept(this);
+        target = saved;
+    }
+
+    private int anyRegister(Expr expr) {
+        // 局部变量直接用它自己的寄存器，其他表达式算到一个新的临时寄存器里
+        int local = localRegister(expr);
+        if (local != -1) {
+            return local;
+        }
+        int register = allocRegister();
+        expression(expr, register);
+        return register;
+    }
+
+    private int localRegister(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            return localRegister(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Variable) {
+            return resolveLocal(current, ((Expr.Variable) expr).name.lexeme);
+        }
+        return -1;
+    }
+
+    private static boolean pure(Expr expr) {
+        // 没有赋值和调用，求值时不会改动任何变量
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Variable) {
+            return true;
+        }
+        if (expr instanceof Expr.Grouping) {
+            return pure(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Unary) {
+            return pure(((Expr.Unary) expr).right);
+        }
+        if (expr instanceof Expr.Binary) {
+            return pure(((Expr.Binary) expr).left) && pure(((Expr.Binary) expr).right);
+        }
+        if (expr instanceof Expr.Logical) {
+            return pure(((Expr.Logical) expr).left) && pure(((Expr.Logical) expr).right);
+        }
+        return false;
+    }
+
+    private static boolean writesLast(Expr expr) {
+        // 只在最后一条指令写目标寄存器，目标可以直接是某个局部变量
+        if (expr instanceof Expr.Grouping) {
+            return writesLast(((Expr.Grouping) expr).expression);
+        }
+        return expr instanceof Expr.Literal || expr instanceof Expr.Variable || expr instanceof Expr.Unary
+                || expr instanceof Expr.Binary;
+    }
+
+    private void storeLocal(Expr value, int register) {
+        if (writesLast(value)) {
+            expression(value, register);
+            return;
+        }
+        int saved = current.freeRegister;
+        int temp = allocRegister();
+        expression(value, temp);
+        emit(OpCode.MOVE, register, temp);
+        current.freeRegister = saved;
+    }
+
+    private static Double numberLiteral(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            return numberLiteral(((Expr.Grouping) expr).expression);
+        }
+        if (expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double) {
+            return (Double) ((Expr.Literal) expr).value;
+        }
+        return null;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        boolean captured = false;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            captured |= locals.remove(locals.size() - 1).captured;
+        }
+        if (captured) {
+            emit(OpCode.CLOSE, locals.size());
+        }
+        current.freeRegister = locals.size();
+    }
+
+    private void addLocal(Token name) {
+        // 新的局部变量就是下一个寄存器
+        current.locals.add(new Local(name.lexeme, current.scopeDepth));
+        current.freeRegister = current.locals.size();
+    }
+
+    private int findLocalInScope(Token name) {
+        // 同一个作用域里已经声明过
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth < current.scopeDepth) {
+                break;
+            }
+            if (local.name.equals(name.lexeme)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int resolveLocal(FunctionState state, String name) {
+        return resolveLocal(state, name, false);
+    }
+
+    private static int resolveLocal(FunctionState state, String name, boolean pending) {
+        // 同一个函数里的代码现在就会执行，看不到还没声明的函数
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            Local local = state.locals.get(i);
+            if (local.name.equals(name) && (pending || !local.pending)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void declareFunctions(List<Stmt> statements) {
+        // 局部作用域里的函数名先占好寄存器，放 nil，声明的时候再放进闭包
+        if (current.scopeDepth == 0) {
+            return;
+        }
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function) {
+                Token name = ((Stmt.Function) statement).name;
+                if (findLocalInScope(name) == -1) {
+                    int register = allocRegister();
+                    emit(OpCode.LOADNIL, register);
+                    addLocal(name);
+                    current.locals.get(register).pending = true;
+                }
+            }
+        }
+    }
+
+    private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private int resolveUpvalue(FunctionState state, Token name) {
+        if (state.enclosing == null) {
+            return -1;
+        }
+        int local = resolveLocal(state.enclosing, name.lexeme, true);
+        if (local != -1) {
+            state.enclosing.locals.get(local).captured = true;
+            return addUpvalue(state, local, true);
+        }
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, upvalue, false);
+        }
+        return -1;
+    }
+
+    private void endStatement() {
+        // 临时寄存器用完就还回去
+        current.freeRegister = current.locals.size();
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        declareFunctions(stmt.statements);
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        endScope();
+        return null;
+    }
+
+    private int emitCondition(Expr condition) {
+        // 条件是比较时，比较和跳转合成一条指令
+        // 返回需要回填的跳转位置
+        if (condition instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) condition;
+            int op = -1;
+            switch (binary.operator.type) {
+            case LESS:
+                op = OpCode.JNLT;
+                break;
+            case LESS_EQUAL:
+                op = OpCode.JNLE;
+                break;
+            case GREATER:
+                op = OpCode.JNGT;
+                break;
+            case GREATER_EQUAL:
+                op = OpCode.JNGE;
+                break;
+            default:
+                break;
+            }
+            if (op != -1) {
+                Double constant = numberLiteral(binary.right);
+                int left = leftOperand(binary.left, binary.right);
+                at(binary.operator);
+                if (constant != null) {
+                    emit(op + OpCode.JNLTK - OpCode.JNLT, left, makeConstant(constant));
+                } else {
+                    int right = anyRegister(binary.right);
+                    at(binary.operator);
+                    emit(op, left, right);
+                }
+                int jump = emitJump();
+                endStatement();
+                return jump;
+            }
+        }
+        int register = anyRegister(condition);
+        emit(OpCode.JMPF, register);
+        int jump = emitJump();
+        endStatement();
+        return jump;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        int thenJump = emitCondition(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch == null) {
+            patchJump(thenJump);
+            return null;
+        }
+        emit(OpCode.JMP);
+        int elseJump = emitJump();
+        patchJump(thenJump);
+        stmt.elseBranch.accept(this);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk().count;
+        int exitJump = emitCondition(stmt.condition);
+        stmt.body.accept(this);
+        emit(OpCode.JMP, loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression instanceof Expr.Assign) {
+            // 赋值语句不需要结果
+            expression(stmt.expression, -1);
+        } else {
+            anyRegister(stmt.expression);
+        }
+        endStatement();
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        int register = anyRegister(stmt.expression);
+        emit(OpCode.PRINT, register);
+        endStatement();
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        at(stmt.name);
+        boolean local = current.scopeDepth > 0;
+        int register;
+        if (!local) {
+            register = allocRegister();
+        } else {
+            register = findLocalInScope(stmt.name);
+            if (register == -1) {
+                // 先声明，函数体里可以递归引用自己
+                register = allocRegister();
+                addLocal(stmt.name);
+            } else {
+                current.locals.get(register).pending = false;
+            }
+        }
+
+        FunctionState enclosing = current;
+        current = new FunctionState(enclosing, new ObjFunction(stmt.name.lexeme));
+        current.function.arity = stmt.params.size();
+        beginScope();
+        for (Token param : stmt.params) {
+            allocRegister();
+            addLocal(param);
+        }
+        declareFunctions(stmt.body);
+        for (Stmt statement : stmt.body) {
+            statement.accept(this);
+        }
+        List<Upvalue> upvalues = current.upvalues;
+        ObjFunction function = endFunction();
+
+        at(stmt.name);
+        emit(OpCode.CLOSURE, register, makeConstant(function));
+        for (Upvalue upvalue : upvalues) {
+            emit(upvalue.isLocal ? 1 : 0);
+            emit(upvalue.index);
+        }
+        if (!local) {
+            emit(OpCode.DEFGLOBAL, register, makeConstant(stmt.name.lexeme));
+        }
+        endStatement();
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        int register = anyRegister(stmt.expr);
+        at(stmt.keyword);
+        emit(OpCode.RETURN, register);
+        endStatement();
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (current.scopeDepth > 0) {
+            int existing = findLocalInScope(stmt.name);
+            if (existing != -1) {
+                current.locals.get(existing).pending = false;
+                // 同一个作用域重复声明，和树遍历解释器一样当作赋值
+                if (stmt.initializer != null) {
+                    storeLocal(stmt.initializer, existing);
+                } else {
+                    emit(OpCode.LOADNIL, existing);
+                }
+            } else {
+                // 初始值直接算到新变量的寄存器里，算完才声明，var a = a; 的右边是外层的 a
+                int register = allocRegister();
+                if (stmt.initializer != null) {
+                    expression(stmt.initializer, register);
+                } else {
+                    emit(OpCode.LOADNIL, register);
+                }
+                addLocal(stmt.name);
+            }
+            endStatement();
+            return null;
+        }
+
+        int register;
+        if (stmt.initializer != null) {
+            register = anyRegister(stmt.initializer);
+        } else {
+            register = allocRegister();
+            emit(OpCode.LOADNIL, register);
+        }
+        at(stmt.name);
+        emit(OpCode.DEFGLOBAL, register, makeConstant(stmt.name.lexeme));
+        endStatement();
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        int result = target;
+        int local = resolveLocal(current, expr.name.lexeme);
+        if (local != -1) {
+            storeLocal(expr.value, local);
+            if (result != -1 && result != local) {
+                emit(OpCode.MOVE, result, local);
+            }
+            return null;
+        }
+
+        int saved = current.freeRegister;
+        int register;
+        if (result != -1) {
+            expression(expr.value, result);
+            register = result;
+        } else {
+            register = anyRegister(expr.value);
+        }
+        at(expr.name);
+        int upvalue = resolveUpvalue(current, expr.name);
+        if (upvalue != -1) {
+            emit(OpCode.SETUPVAL, register, upvalue);
+        } else {
+            emit(OpCode.SETGLOBAL, register, makeConstant(expr.name.lexeme));
+        }
+        current.freeRegister = saved;
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        // 目标寄存器总是临时寄存器，见 storeLocal
+        int result = target;
+        expression(expr.left, result);
+        emit(expr.operator.type == TokenType.OR ? OpCode.JMPT : OpCode.JMPF, result);
+        int endJump = emitJump();
+        expression(expr.right, result);
+        patchJump(endJump);
+        return null;
+    }
+
+    private int leftOperand(Expr left, Expr right) {
+        // 右边可能改动左边的变量时，左边要先复制一份
+        if (pure(right)) {
+            return anyRegister(left);
+        }
+        int register = allocRegister();
+        expression(left, register);
+        return register;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        int result = target;
+        int saved = current.freeRegister;
+        int op;
+        switch (expr.operator.type) {
+        case GREATER:
+            op = OpCode.GT;
+            break;
+        case GREATER_EQUAL:
+            op = OpCode.GE;
+            break;
+        case LESS:
+            op = OpCode.LT;
+            break;
+        case LESS_EQUAL:
+            op = OpCode.LE;
+            break;
+        case MINUS:
+            op = OpCode.SUB;
+            break;
+        case PLUS:
+            op = OpCode.ADD;
+            break;
+        case SLASH:
+            op = OpCode.DIV;
+            break;
+        case STAR:
+            op = OpCode.MUL;
+            break;
+        case BANG_EQUAL:
+            op = OpCode.NE;
+            break;
+        case EQUAL_EQUAL:
+            op = OpCode.EQ;
+            break;
+        default:
+            throw new CompileError(expr.operator.file(), expr.operator.line(), "Unknown binary operator.");
+        }
+
+        int left = leftOperand(expr.left, expr.right);
+        Double constant = numberLiteral(expr.right);
+        // 报错时用运算符所在的行
+        if (constant != null && op >= OpCode.ADD && op <= OpCode.DIV) {
+            at(expr.operator);
+            emit(op + OpCode.ADDK - OpCode.ADD, result, left, makeConstant(constant));
+        } else {
+            int right = anyRegister(expr.right);
+            at(expr.operator);
+            emit(op, result, left, right);
+        }
+        current.freeRegister = saved;
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value == null) {
+            emit(OpCode.LOADNIL, target);
+        } else if (value instanceof Boolean) {
+            emit((boolean) value ? OpCode.LOADTRUE : OpCode.LOADFALSE, target);
+        } else {
+            emit(OpCode.LOADK, target, makeConstant(value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        int result = target;
+        int saved = current.freeRegister;
+        int right = anyRegister(expr.right);
+        at(expr.operator);
+        emit(expr.operator.type == TokenType.MINUS ? OpCode.NEG : OpCode.NOT, result, right);
+        current.freeRegister = saved;
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        // 被调用的函数和参数要放在栈顶连续的寄存器里
+        int result = target;
+        int saved = current.freeRegister;
+        int callee = result == saved - 1 ? result : allocRegister();
+        expression(expr.callee, callee);
+        for (Expr argument : expr.arguments) {
+            expression(argument, allocRegister());
+        }
+        at(expr.mark);
+        emit(OpCode.CALL, callee, expr.arguments.size());
+        if (callee != result) {
+            emit(OpCode.MOVE, result, callee);
+        }
+        current.freeRegister = saved;
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        at(expr.name);
+        int local = resolveLocal(current, expr.name.lexeme);
+        if (local != -1) {
+            if (local != target) {
+                emit(OpCode.MOVE, target, local);
+            }
+            return null;
+        }
+        int upvalue = resolveUpvalue(current, expr.name);
+        if (upvalue != -1) {
+            emit(OpCode.GETUPVAL, target, upvalue);
+        } else {
+            emit(OpCode.GETGLOBAL, target, makeConstant(expr.name.lexeme));
+        }
+        return null;
+    }
+}
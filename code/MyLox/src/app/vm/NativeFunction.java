@@ -0,0 +1,14 @@
+package app.vm;
+
+/**
+ * NativeFunction
+ *
+ * 用 Java 实现的函数，由宿主通过 VM.define 放进全局变量。
+ * 参数个数由 VM 检查；参数类型不对时抛出 IllegalArgumentException，
+ * 信息作为运行时错误报告给用户。
+ */
+public interface NativeFunction {
+    int arity();
+
+    Object call(Object[] arguments);
+}
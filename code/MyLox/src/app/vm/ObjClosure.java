@@ -0,0 +1,21 @@
+package app.vm;
+
+/**
+ * ObjClosure
+ *
+ * 运行时的函数值：函数本身加上它捕获的 upvalue。
+ */
+final class ObjClosure {
+    final ObjFunction function;
+    final ObjUpvalue[] upvalues;
+
+    ObjClosure(ObjFunction function) {
+        this.function = function;
+        this.upvalues = new ObjUpvalue[function.upvalueCount];
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
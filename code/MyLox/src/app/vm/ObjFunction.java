@@ -0,0 +1,27 @@
+package app.vm;
+
+/**
+ * ObjFunction
+ *
+ * 编译好的函数：指令、参数个数和需要的 upvalue 个数。
+ */
+public final class ObjFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+    // 这个函数最多会用到的寄存器个数，调用时据此扩容
+    int maxRegisters = 1;
+
+    ObjFunction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null) {
+            return "<script>";
+        }
+        return "<fn " + name + ">";
+    }
+}
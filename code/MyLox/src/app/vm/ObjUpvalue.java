@@ -0,0 +1,17 @@
+package app.vm;
+
+/**
+ * ObjUpvalue
+ *
+ * 被闭包捕获的变量。变量还在寄存器里时 location 指向它在栈上的下标，
+ * 离开作用域以后值搬到 closed 里，location 置为 -1。
+ */
+final class ObjUpvalue {
+    int location;
+    Object closed;
+    ObjUpvalue next;
+
+    ObjUpvalue(int location) {
+        this.location = location;
+    }
+}
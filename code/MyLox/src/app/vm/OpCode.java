@@ -0,0 +1,77 @@
+package app.vm;
+
+/**
+ * OpCode
+ *
+ * 寄存器式指令。每条指令占若干个 int：第一个是操作码，后面是操作数，
+ * 操作数的含义写在注释里。A、B、C 是寄存器（相对当前帧的 base），
+ * K 是常量池下标，T 是跳转目标（指令下标）。
+ */
+public final class OpCode {
+    // A B        R[A] = R[B]
+    public static final int MOVE = 0;
+    // A K        R[A] = K
+    public static final int LOADK = 1;
+    // A          R[A] = nil / true / false
+    public static final int LOADNIL = 2;
+    public static final int LOADTRUE = 3;
+    public static final int LOADFALSE = 4;
+    // A K        R[A] = globals[K]
+    public static final int GETGLOBAL = 5;
+    // A K        globals[K] = R[A]
+    public static final int DEFGLOBAL = 6;
+    public static final int SETGLOBAL = 7;
+    // A U        R[A] = upvalues[U]
+    public static final int GETUPVAL = 8;
+    // A U        upvalues[U] = R[A]
+    public static final int SETUPVAL = 9;
+    // A B C      R[A] = R[B] op R[C]
+    public static final int ADD = 10;
+    public static final int SUB = 11;
+    public static final int MUL = 12;
+    public static final int DIV = 13;
+    // A B K      R[A] = R[B] op K，K 是数字常量
+    public static final int ADDK = 14;
+    public static final int SUBK = 15;
+    public static final int MULK = 16;
+    public static final int DIVK = 17;
+    // A B C      R[A] = R[B] op R[C]，结果是布尔值
+    public static final int EQ = 18;
+    public static final int NE = 19;
+    public static final int LT = 20;
+    public static final int LE = 21;
+    public static final int GT = 22;
+    public static final int GE = 23;
+    // A B        R[A] = !R[B] / -R[B]
+    public static final int NOT = 24;
+    public static final int NEG = 25;
+    // A          打印 R[A]
+    public static final int PRINT = 26;
+    // T
+    public static final int JMP = 27;
+    // A T        R[A] 为假 / 为真时跳转
+    public static final int JMPF = 28;
+    public static final int JMPT = 29;
+    // B C T      比较不成立时跳转，用在 if / while 的条件上
+    public static final int JNLT = 30;
+    public static final int JNLE = 31;
+    public static final int JNGT = 32;
+    public static final int JNGE = 33;
+    // B K T      同上，右边是数字常量
+    public static final int JNLTK = 34;
+    public static final int JNLEK = 35;
+    public static final int JNGTK = 36;
+    public static final int JNGEK = 37;
+    // A N        调用 R[A]，参数在 R[A+1] .. R[A+N]，返回值放回 R[A]
+    public static final int CALL = 38;
+    // A K        R[A] = 闭包(K)，后面每个 upvalue 跟两个 int：isLocal, index
+    public static final int CLOSURE = 39;
+    // A          关闭 R[A] 及以上寄存器上的 upvalue
+    public static final int CLOSE = 40;
+    // A          返回 R[A]
+    public static final int RETURN = 41;
+    public static final int RETURNNIL = 42;
+
+    private OpCode() {
+    }
+}
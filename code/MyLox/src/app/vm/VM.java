@@ -0,0 +1,564 @@
+package app.vm;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * VM
+ *
+ * 寄存器式虚拟机，做法和 Lua 类似：每次调用占栈上一段寄存器，
+ * 参数就是被调用函数的 R[1] .. R[n]，不需要来回搬。
+ * 栈分成两个平行数组：数字直接放在 nums 里，对应的 refs 位置放 NUMBER 标记；
+ * 其他值（nil、布尔、字符串、闭包）放在 refs 里，这样数字运算全程不需要装箱。
+ */
+public final class VM {
+    // 标记：这个栈位置上是数字，值在 nums 里
+    static final Object NUMBER = new Object();
+    private static final Object UNDEFINED = new Object();
+    private static final int FRAMES_MAX = 1 << 16;
+
+    private static final class CallFrame {
+        ObjClosure closure;
+        int ip;
+        int base;
+    }
+
+    // 所有调用帧的寄存器连在一起，每帧从 base 开始
+    private Object[] refs = new Object[256];
+    private double[] nums = new double[256];
+
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    private final Map<String, Object> globals = new HashMap<>();
+    // 还在栈上的 upvalue，按 location 从大到小排列
+    private ObjUpvalue openUpvalues = null;
+    private final PrintStream out;
+
+    public VM() {
+        this(System.out);
+    }
+
+    public VM(PrintStream out) {
+        this.out = out;
+    }
+
+    // 宿主提供的全局变量，比如 NativeFunction
+    public void define(String name, Object value) {
+        globals.put(name, value);
+    }
+
+    public void interpret(ObjFunction script) {
+        frameCount = 0;
+        openUpvalues = null;
+        ObjClosure closure = new ObjClosure(script);
+        ensureStack(script.maxRegisters);
+        refs[0] = closure;
+        pushFrame(closure, 0);
+        try {
+            run();
+        } finally {
+            // 出错时也不要留住栈上的对象
+            Arrays.fill(refs, null);
+        }
+    }
+
+    private void ensureStack(int needed) {
+        if (needed < refs.length) {
+            return;
+        }
+        int size = refs.length;
+        while (size <= needed) {
+            size *= 2;
+        }
+        refs = Arrays.copyOf(refs, size);
+        nums = Arrays.copyOf(nums, size);
+    }
+
+    private void pushFrame(ObjClosure closure, int base) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = base;
+        frameCount++;
+    }
+
+    private VmError error(int pc, String message) {
+        // pc 是出错指令的位置
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.closure.function.chunk;
+        return new VmError(message, chunk.files[pc], chunk.lines[pc]);
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.closure.function.chunk;
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        double[] numbers = chunk.numbers;
+        int ip = frame.ip;
+        int base = frame.base;
+        Object[] refs = this.refs;
+        double[] nums = this.nums;
+
+        for (;;) {
+            switch (code[ip]) {
+            case OpCode.MOVE: {
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                refs[a] = refs[b];
+                nums[a] = nums[b];
+                ip += 3;
+                break;
+            }
+            case OpCode.LOADK: {
+                int a = base + code[ip + 1];
+                int k = code[ip + 2];
+                refs[a] = constants[k];
+                nums[a] = numbers[k];
+                ip += 3;
+                break;
+            }
+            case OpCode.LOADNIL:
+                refs[base + code[ip + 1]] = null;
+                ip += 2;
+                break;
+            case OpCode.LOADTRUE:
+                refs[base + code[ip + 1]] = Boolean.TRUE;
+                ip += 2;
+                break;
+            case OpCode.LOADFALSE:
+                refs[base + code[ip + 1]] = Boolean.FALSE;
+                ip += 2;
+                break;
+            case OpCode.GETGLOBAL: {
+                int a = base + code[ip + 1];
+                String name = (String) constants[code[ip + 2]];
+                Object value = globals.getOrDefault(name, UNDEFINED);
+                if (value == UNDEFINED) {
+                    throw error(ip, "Undefined variable '" + name + "'.");
+                }
+                if (value instanceof Double) {
+                    refs[a] = NUMBER;
+                    nums[a] = (double) value;
+                } else {
+                    refs[a] = value;
+                }
+                ip += 3;
+                break;
+            }
+            case OpCode.DEFGLOBAL: {
+                int a = base + code[ip + 1];
+                globals.put((String) constants[code[ip + 2]], box(refs[a], nums[a]));
+                ip += 3;
+                break;
+            }
+            case OpCode.SETGLOBAL: {
+                int a = base + code[ip + 1];
+                String name = (String) constants[code[ip + 2]];
+                if (!globals.containsKey(name)) {
+                    throw error(ip, "Undefined variable '" + name + "'.");
+                }
+                globals.put(name, box(refs[a], nums[a]));
+                ip += 3;
+                break;
+            }
+            case OpCode.GETUPVAL: {
+                int a = base + code[ip + 1];
+                ObjUpvalue upvalue = frame.closure.upvalues[code[ip + 2]];
+                if (upvalue.location >= 0) {
+                    refs[a] = refs[upvalue.location];
+                    nums[a] = nums[upvalue.location];
+                } else if (upvalue.closed instanceof Double) {
+                    refs[a] = NUMBER;
+                    nums[a] = (double) upvalue.closed;
+                } else {
+                    refs[a] = upvalue.closed;
+                }
+                ip += 3;
+                break;
+            }
+            case OpCode.SETUPVAL: {
+                int a = base + code[ip + 1];
+                ObjUpvalue upvalue = frame.closure.upvalues[code[ip + 2]];
+                if (upvalue.location >= 0) {
+                    refs[upvalue.location] = refs[a];
+                    nums[upvalue.location] = nums[a];
+                } else {
+                    upvalue.closed = box(refs[a], nums[a]);
+                }
+                ip += 3;
+                break;
+            }
+            case OpCode.ADD: {
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                int c = base + code[ip + 3];
+                if (refs[b] == NUMBER && refs[c] == NUMBER) {
+                    nums[a] = nums[b] + nums[c];
+                    refs[a] = NUMBER;
+                } else if (refs[b] instanceof String && refs[c] instanceof String) {
+                    refs[a] = concat((String) refs[b], (String) refs[c], ip);
+                } else {
+                    throw error(ip, "Operands must be two numbers or two strings.");
+                }
+                ip += 4;
+                break;
+            }
+            case OpCode.SUB:
+            case OpCode.MUL:
+            case OpCode.DIV: {
+                int op = code[ip];
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                int c = base + code[ip + 3];
+                if (refs[b] != NUMBER || refs[c] != NUMBER) {
+                    throw error(ip, "Operands must be numbers.");
+                }
+                nums[a] = arithmetic(op, nums[b], nums[c], ip);
+                refs[a] = NUMBER;
+                ip += 4;
+                break;
+            }
+            case OpCode.ADDK: {
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                if (refs[b] != NUMBER) {
+                    // 常量总是数字，字符串加数字也是这个错误
+                    throw error(ip, "Operands must be two numbers or two strings.");
+                }
+                nums[a] = nums[b] + numbers[code[ip + 3]];
+                refs[a] = NUMBER;
+                ip += 4;
+                break;
+            }
+            case OpCode.SUBK:
+            case OpCode.MULK:
+            case OpCode.DIVK: {
+                int op = code[ip];
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                if (refs[b] != NUMBER) {
+                    throw error(ip, "Operands must be numbers.");
+                }
+                nums[a] = arithmetic(op - OpCode.ADDK + OpCode.ADD, nums[b], numbers[code[ip + 3]], ip);
+                refs[a] = NUMBER;
+                ip += 4;
+                break;
+            }
+            case OpCode.EQ:
+            case OpCode.NE: {
+                int a = base + code[ip + 1];
+                boolean equal = valuesEqual(refs, nums, base + code[ip + 2], base + code[ip + 3]);
+                refs[a] = equal == (code[ip] == OpCode.EQ) ? Boolean.TRUE : Boolean.FALSE;
+                ip += 4;
+                break;
+            }
+            case OpCode.LT:
+            case OpCode.LE:
+            case OpCode.GT:
+            case OpCode.GE: {
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                int c = base + code[ip + 3];
+                if (refs[b] != NUMBER || refs[c] != NUMBER) {
+                    throw error(ip, "Operands must be numbers.");
+                }
+                refs[a] = compare(code[ip] - OpCode.LT, nums[b], nums[c]) ? Boolean.TRUE : Boolean.FALSE;
+                ip += 4;
+                break;
+            }
+            case OpCode.NOT: {
+                int b = base + code[ip + 2];
+                refs[base + code[ip + 1]] = isFalsey(refs[b], nums[b]) ? Boolean.TRUE : Boolean.FALSE;
+                ip += 3;
+                break;
+            }
+            case OpCode.NEG: {
+                int a = base + code[ip + 1];
+                int b = base + code[ip + 2];
+                if (refs[b] != NUMBER) {
+                    throw error(ip, "Operands must be numbers.");
+                }
+                nums[a] = -nums[b];
+                refs[a] = NUMBER;
+                ip += 3;
+                break;
+            }
+            case OpCode.PRINT: {
+                int a = base + code[ip + 1];
+                out.println(stringify(refs[a], nums[a]));
+                ip += 2;
+                break;
+            }
+            case OpCode.JMP:
+                ip = code[ip + 1];
+                break;
+            case OpCode.JMPF: {
+                int a = base + code[ip + 1];
+                ip = isFalsey(refs[a], nums[a]) ? code[ip + 2] : ip + 3;
+                break;
+            }
+            case OpCode.JMPT: {
+                int a = base + code[ip + 1];
+                ip = isFalsey(refs[a], nums[a]) ? ip + 3 : code[ip + 2];
+                break;
+            }
+            case OpCode.JNLT:
+            case OpCode.JNLE:
+            case OpCode.JNGT:
+            case OpCode.JNGE: {
+                int b = base + code[ip + 1];
+                int c = base + code[ip + 2];
+                if (refs[b] != NUMBER || refs[c] != NUMBER) {
+                    throw error(ip, "Operands must be numbers.");
+                }
+                ip = compare(code[ip] - OpCode.JNLT, nums[b], nums[c]) ? ip + 4 : code[ip + 3];
+                break;
+            }
+            case OpCode.JNLTK:
+            case OpCode.JNLEK:
+            case OpCode.JNGTK:
+            case OpCode.JNGEK: {
+                int b = base + code[ip + 1];
+                if (refs[b] != NUMBER) {
+                    throw error(ip, "Operands must be numbers.");
+                }
+                double k = numbers[code[ip + 2]];
+                ip = compare(code[ip] - OpCode.JNLTK, nums[b], k) ? ip + 4 : code[ip + 3];
+                break;
+            }
+            case OpCode.CALL: {
+                int newBase = base + code[ip + 1];
+                int argCount = code[ip + 2];
+                Object callee = refs[newBase];
+                if (callee instanceof NativeFunction) {
+                    callNative((NativeFunction) callee, newBase, argCount, ip);
+                    ip += 3;
+                    break;
+                }
+                if (!(callee instanceof ObjClosure)) {
+                    throw error(ip, "Can only call functions and classes.");
+                }
+                ObjClosure closure = (ObjClosure) callee;
+                ObjFunction function = closure.function;
+                if (argCount != function.arity) {
+                    throw error(ip, "Expected " + function.arity + " arguments but got " + argCount + ".");
+                }
+                if (frameCount == FRAMES_MAX) {
+                    throw error(ip, "Stack overflow.");
+                }
+                frame.ip = ip + 3;
+                ensureStack(newBase + function.maxRegisters);
+                refs = this.refs;
+                nums = this.nums;
+                pushFrame(closure, newBase);
+                frame = frames[frameCount - 1];
+                chunk = function.chunk;
+                code = chunk.code;
+                constants = chunk.constants;
+                numbers = chunk.numbers;
+                ip = 0;
+                base = newBase;
+                break;
+            }
+            case OpCode.CLOSURE: {
+                int a = base + code[ip + 1];
+                ObjClosure closure = new ObjClosure((ObjFunction) constants[code[ip + 2]]);
+                ip += 3;
+                for (int i = 0; i < closure.upvalues.length; i++) {
+                    boolean isLocal = code[ip] != 0;
+                    int index = code[ip + 1];
+                    ip += 2;
+                    if (isLocal) {
+                        closure.upvalues[i] = captureUpvalue(base + index);
+                    } else {
+                        closure.upvalues[i] = frame.closure.upvalues[index];
+                    }
+                }
+                refs[a] = closure;
+                break;
+            }
+            case OpCode.CLOSE:
+                closeUpvalues(base + code[ip + 1]);
+                ip += 2;
+                break;
+            case OpCode.RETURN:
+            case OpCode.RETURNNIL: {
+                Object resultRef = null;
+                double resultNum = 0;
+                if (code[ip] == OpCode.RETURN) {
+                    int a = base + code[ip + 1];
+                    resultRef = refs[a];
+                    resultNum = nums[a];
+                }
+                if (openUpvalues != null) {
+                    closeUpvalues(base);
+                }
+                frameCount--;
+                if (frameCount == 0) {
+                    return;
+                }
+                // 返回值放在被调用函数原来所在的寄存器
+                refs[base] = resultRef;
+                nums[base] = resultNum;
+                frame = frames[frameCount - 1];
+                chunk = frame.closure.function.chunk;
+                code = chunk.code;
+                constants = chunk.constants;
+                numbers = chunk.numbers;
+                ip = frame.ip;
+                base = frame.base;
+                break;
+            }
+            default:
+                throw error(ip, "Unknown opcode " + code[ip] + ".");
+            }
+        }
+    }
+
+    private double arithmetic(int op, double a, double b, int pc) {
+        switch (op) {
+        case OpCode.SUB:
+            return a - b;
+        case OpCode.MUL:
+            return a * b;
+        default:
+            if (b == 0) {
+                throw error(pc, "divide zero");
+            }
+            return a / b;
+        }
+    }
+
+    private String concat(String a, String b, int ip) {
+        // 单独一个小方法，run() 太大，JIT 不会把字符串拼接内联进去。
+        // 长度超出 int 和树遍历解释器一样是运行时错误，不让 String.concat 抛出 OutOfMemoryError
+        if (a.length() > Integer.MAX_VALUE - b.length()) {
+            throw error(ip, "String is too long.");
+        }
+        return a.concat(b);
+    }
+
+    private static boolean compare(int kind, double a, double b) {
+        // kind 依次是 <、<=、>、>=
+        switch (kind) {
+        case 0:
+            return a < b;
+        case 1:
+            return a <= b;
+        case 2:
+            return a > b;
+        default:
+            return a >= b;
+        }
+    }
+
+    private ObjUpvalue captureUpvalue(int location) {
+        ObjUpvalue previous = null;
+        ObjUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.location > location) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.location == location) {
+            return upvalue;
+        }
+        ObjUpvalue created = new ObjUpvalue(location);
+        created.next = upvalue;
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.location >= last) {
+            ObjUpvalue upvalue = openUpvalues;
+            upvalue.closed = box(refs[upvalue.location], nums[upvalue.location]);
+            upvalue.location = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void callNative(NativeFunction function, int base, int argCount, int ip) {
+        // 参数在 callee 后面的寄存器里，结果和 Lox 函数一样放在 callee 所在的寄存器
+        if (argCount != function.arity()) {
+            throw error(ip, "Expected " + function.arity() + " arguments but got " + argCount + ".");
+        }
+        Object[] arguments = new Object[argCount];
+        for (int i = 0; i < argCount; i++) {
+            arguments[i] = box(refs[base + 1 + i], nums[base + 1 + i]);
+        }
+        Object result;
+        try {
+            result = function.call(arguments);
+        } catch (IllegalArgumentException e) {
+            throw error(ip, e.getMessage());
+        }
+        if (result instanceof Double) {
+            refs[base] = NUMBER;
+            nums[base] = (double) result;
+        } else {
+            refs[base] = result;
+        }
+    }
+
+    private static Object box(Object ref, double num) {
+        if (ref == NUMBER) {
+            return num;
+        }
+        return ref;
+    }
+
+    private static boolean isFalsey(Object ref, double num) {
+        // 和树遍历解释器一样：nil、false 和数字 0 是假
+        if (ref == NUMBER) {
+            return num == 0;
+        }
+        if (ref == null) {
+            return true;
+        }
+        if (ref instanceof Boolean) {
+            return !(boolean) ref;
+        }
+        return false;
+    }
+
+    private static boolean valuesEqual(Object[] refs, double[] nums, int a, int b) {
+        if (refs[a] == NUMBER || refs[b] == NUMBER) {
+            // 和 Double.equals 保持一致
+            return refs[a] == refs[b]
+                    && Double.doubleToLongBits(nums[a]) == Double.doubleToLongBits(nums[b]);
+        }
+        if (refs[a] == null) {
+            return refs[b] == null;
+        }
+        return refs[a].equals(refs[b]);
+    }
+
+    private static String stringify(Object ref, double num) {
+        if (ref == NUMBER) {
+            String text = Double.toString(num);
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+        if (ref == null) {
+            return "nil";
+        }
+        return ref.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package app.vm;
+
+/**
+ * VmError
+ *
+ * VM 运行时错误，line 是出错指令所在的行。
+ */
+public class VmError extends RuntimeException {
+    public final int line;
+    // 多个文件的时候是出错的文件，单个文件是 null
+    public final String file;
+
+    VmError(String message, String file, int line) {
+        super(message);
+        this.line = line;
+        this.file = file;
+    }
+}
@@ -52,7 +52,7 @@ public class GenerateAst {
 
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign     : Token name, Expr value",
+            "Assign     : Token name, Expr value | int depth = -1, int slot = -1",
             "Logical    : Expr left, Token operator, Expr right",
             "Binary     : Expr left, Token operator, Expr right",
             "Grouping   : Expr expression", 
@@ -60,26 +60,29 @@ public class GenerateAst {
             "Unary      : Token operator, Expr right",
             // mark 记录 token 的位置
             "Call       : Expr callee, Token mark, List<Expr> arguments",
-            "Variable   : Token name"  
+            // | 之后是 Resolver 填写的字段；depth 为 -1 的全局变量，slot 是 Resolver 按名字给的编号
+            "Variable   : Token name | int depth = -1, int slot = -1"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-            "Block      : List<Stmt> statements",    
+            // pooled 为 true 表示 Resolver 确定这个作用域不会被闭包留住，运行时环境从帧栈里借
+            "Block      : List<Stmt> statements | int locals = 0, boolean pooled = false",
             "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
             // 另一个 If 形式包括 多个 elif
             // "If         : "
             "While      : Expr condition, Stmt body",
             "Expression : Expr expression",            
             "Print      : Expr expression",
-            "Function   : Token name, List<Token> params, List<Stmt> body",
-            "Return        : Expr expr",
-            "Var        : Token name, Expr initializer"
+            "Function   : Token name, List<Token> params, List<Stmt> body | int slot = -1, int locals = 0, boolean pooled = false",
+            "Return     : Token keyword, Expr expr",
+            "Var        : Token name, Expr initializer | int slot = -1"
         ));
         
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
-        writer.println("    static class " + className + " extends " + baseName + " {");
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+            String mutableList) {
+        writer.println("    public static class " + className + " extends " + baseName + " {");
 
         // Constructor.
         writer.println("        " + className + "(" + fieldList + ") {");
@@ -95,21 +98,29 @@ public class GenerateAst {
 
         // Visitor pattern.
         writer.println();
-        writer.println("        <R> R accept(Visitor<R> visitor) {");
+        writer.println("        public <R> R accept(Visitor<R> visitor) {");
         writer.println("            return visitor.visit" + className + baseName + "(this);");
         writer.println("        }");
 
         // Fields.
         writer.println();
         for (String field : fields) {
-            writer.println("        final " + field + ";");
+            writer.println("        public final " + field + ";");
+        }
+
+        // 可变字段，语法树建好以后由其他的 pass 填写
+        if (mutableList != null) {
+            writer.println();
+            for (String field : mutableList.split(", ")) {
+                writer.println("        " + field + ";");
+            }
         }
 
         writer.println("    }");
     }
 
     private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
-        writer.println("    interface Visitor<R> {");
+        writer.println("    public interface Visitor<R> {");
 
         for (String type : types) {
             String typeName = type.split(":")[0].trim();
@@ -128,18 +139,20 @@ public class GenerateAst {
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("abstract class " + basename + " {");
+        writer.println("public abstract class " + basename + " {");
 
         // 定义基类抽象方法 accept
-        writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        writer.println("    public abstract <R> R accept(Visitor<R> visitor);");
 
         // 定义抽象类内部 Vistor 接口
         defineVisitor(writer, basename, types);
 
         for (String type : types) {
             String classname = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, basename, classname, fields);
+            String[] parts = type.split(":")[1].split("\\|");
+            String fields = parts[0].trim();
+            String mutables = parts.length > 1 ? parts[1].trim() : null;
+            defineType(writer, basename, classname, fields, mutables);
         }
 
         writer.println("}");
@@ -0,0 +1,668 @@
+/*
+ * 词法分析器生成器
+ *
+ * 每条规则是 "名字 : 正则"，名字是 TokenType，或者 skip（丢掉），
+ * 或者 error（报错后丢掉）；后面跟 " => 消息" 的规则匹配到以后先报错。
+ *
+ * 正则支持：字符、\ 转义、[a-z] [^"] 字符集合、( ) 分组、| 或、* + ? 重复
+ *
+ * 匹配规则和手写的 Scanner 一样：
+ * 1. 最长匹配
+ * 2. 一样长的时候前面的规则优先，所以关键字要写在 IDENTIFIER 前面
+ *
+ * 步骤：
+ * 正则 → NFA（Thompson 构造）
+ * 字符 → 等价类（在所有字符边上表现一样的字符分成一类）
+ * NFA → DFA（子集构造）
+ * DFA → 最小化（先按接受的规则分组，再按转移不断拆分直到不变）
+ * 最后合并转移完全一样的字符类，输出 LexerTables.java
+ *
+ * 表里的状态直接存成行的起始下标（状态号乘以字符类数），接受状态排在最后，
+ * 驱动代码每个字符只要查两次表、比较一次。
+ */
+
+package tools;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * GenerateLexer
+ */
+public class GenerateLexer {
+    // ASCII 以外的字符都当作同一个符号
+    private static final int OTHER = 128;
+    private static final int SYMBOLS = 129;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage is: GenerateLexer <output_dir>");
+            System.exit(-1);
+        }
+
+        String outputDir = args[0];
+        defineLexer(outputDir, "LexerTables", Arrays.asList(
+            "skip          : [ \\t\\r\\n]+",
+            "skip          : //[^\\n]*",
+            "LEFT_PAREN    : \\(",
+            "RIGHT_PAREN   : \\)",
+            "LEFT_BRACE    : {",
+            "RIGHT_BRACE   : }",
+            "COMMA         : ,",
+            "DOT           : \\.",
+            "MINUS         : -",
+            "PLUS          : \\+",
+            "SEMICOLON     : ;",
+            "STAR          : \\*",
+            "SLASH         : /",
+            "BANG          : !",
+            "BANG_EQUAL    : !=",
+            "EQUAL         : =",
+            "EQUAL_EQUAL   : ==",
+            "LESS          : <",
+            "LESS_EQUAL    : <=",
+            "GREATER       : >",
+            "GREATER_EQUAL : >=",
+            "STRING        : \"[^\"]*\"",
+            "error         : \"[^\"]* => Unterminated string.",
+            "NUMBER        : [0-9]+(\\.[0-9]+)?",
+            "NUMBER        : [0-9]+\\. => Unexpected character '.'",
+            "AND           : and",
+            "CLASS         : class",
+            "ELSE          : else",
+            "ELIF          : elif",
+            "FALSE         : false",
+            "FOR           : for",
+            "FUN           : fun",
+            "IF            : if",
+            "NIL           : nil",
+            "OR            : or",
+            "PRINT         : print",
+            "RETURN        : return",
+            "SUPER         : super",
+            "THIS          : this",
+            "TRUE          : true",
+            "VAR           : var",
+            "WHILE         : while",
+            "IDENTIFIER    : [a-zA-Z_][a-zA-Z_0-9]*"
+        ));
+    }
+
+    private static void defineLexer(String outputDir, String className, List<String> rules) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        Nfa nfa = new Nfa();
+        NfaState start = nfa.state();
+        for (String rule : rules) {
+            String name = rule.substring(0, rule.indexOf(':')).trim();
+            String regex = rule.substring(rule.indexOf(':') + 1).trim();
+            String message = null;
+            int arrow = regex.lastIndexOf(" => ");
+            if (arrow >= 0) {
+                message = regex.substring(arrow + 4).trim();
+                regex = regex.substring(0, arrow).trim();
+            }
+
+            nfa.rule = names.size();
+            Fragment fragment = new RegexParser(nfa, regex).parse();
+            fragment.end.rule = names.size();
+            start.epsilon.add(fragment.start);
+            names.add(name);
+            messages.add(message);
+        }
+
+        int[] classOf = nfa.classes();
+        Dfa dfa = Dfa.build(start, classOf);
+        int built = dfa.states();
+        dfa = dfa.minimize();
+        dfa.mergeColumns();
+        int accepting = dfa.acceptLast();
+        System.out.println(rules.size() + " rules, " + built + " states, " + dfa.states() + " after minimization, "
+                + dfa.classCount + " character classes");
+
+        boolean[] lines = new boolean[names.size()];
+        for (NfaState state : nfa.states) {
+            if (state.symbols != null && state.symbols.get('\n')) {
+                lines[state.owner] = true;
+            }
+        }
+
+        String path = outputDir + "/" + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+        writer.println("package app;");
+        writer.println();
+        writer.println("import static app.TokenType.*;");
+        writer.println();
+        writer.println("/**");
+        writer.println(" * " + className);
+        writer.println(" *");
+        writer.println(" * 由 tools/GenerateLexer 生成，不要手改。");
+        writer.println(" * " + dfa.states() + " 个状态，" + dfa.classCount + " 个字符类。");
+        writer.println(" */");
+        writer.println("final class " + className + " {");
+        writer.println("    static final int CLASS_COUNT = " + dfa.classCount + ";");
+        writer.println("    // 下面的状态都是行的起始下标");
+        writer.println("    static final int DEAD = 0;");
+        writer.println("    static final int START = " + dfa.classCount + ";");
+        writer.println("    // 不小于这个的都是接受状态");
+        writer.println("    static final int ACCEPTING = " + accepting * dfa.classCount + ";");
+        writer.println();
+        writer.println("    // 字符所属的类，下标 " + OTHER + " 是所有 ASCII 以外的字符");
+        char[] classes = new char[SYMBOLS];
+        for (int c = 0; c < SYMBOLS; c++) {
+            classes[c] = (char) dfa.classOf[c];
+        }
+        defineTable(writer, "CLASSES", classes);
+        writer.println();
+        writer.println("    // NEXT[state + class] 是下一个状态");
+        char[] next = new char[dfa.states() * dfa.classCount];
+        if (next.length > Character.MAX_VALUE) {
+            throw new IllegalStateException("Transition table too large.");
+        }
+        for (int s = 0; s < dfa.states(); s++) {
+            for (int k = 0; k < dfa.classCount; k++) {
+                next[s * dfa.classCount + k] = (char) (dfa.next.get(s)[k] * dfa.classCount);
+            }
+        }
+        defineTable(writer, "NEXT", next);
+        writer.println();
+        writer.println("    // ACCEPT[state / CLASS_COUNT] 是接受的规则编号加一，0 表示不是接受状态");
+        char[] accept = new char[dfa.states()];
+        for (int s = 0; s < dfa.states(); s++) {
+            accept[s] = (char) (dfa.accept.get(s) + 1);
+        }
+        defineTable(writer, "ACCEPT", accept);
+        writer.println();
+
+        writer.println("    // 每条规则生成的 token，null 表示丢掉");
+        writer.println("    static final TokenType[] TOKENS = {");
+        for (String name : names) {
+            boolean dropped = name.equals("skip") || name.equals("error");
+            writer.println("        " + (dropped ? "null" : name) + ",");
+        }
+        writer.println("    };");
+        writer.println();
+        writer.println("    // 匹配到以后要报的错");
+        writer.println("    static final String[] ERRORS = {");
+        for (String message : messages) {
+            writer.println("        " + (message == null ? "null" : "\"" + message + "\"") + ",");
+        }
+        writer.println("    };");
+        writer.println();
+        writer.println("    // 能匹配换行的规则，要数一下行号");
+        writer.println("    static final boolean[] LINES = {");
+        for (boolean line : lines) {
+            writer.println("        " + line + ",");
+        }
+        writer.println("    };");
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineTable(PrintWriter writer, String name, char[] table) {
+        // 表放在字符串常量里，比数组初始化的字节码小得多
+        writer.print("    static final char[] " + name + " = (");
+        for (int i = 0; i < table.length; i++) {
+            if (i % 16 == 0) {
+                writer.println();
+                writer.print(i == 0 ? "        \"" : "        + \"");
+            }
+            char c = table[i];
+            if (c < 256) {
+                writer.printf("\\%03o", (int) c);
+            } else {
+                writer.printf("\\u%04x", (int) c);
+            }
+            if (i % 16 == 15 || i == table.length - 1) {
+                writer.print("\"");
+            }
+        }
+        writer.println(").toCharArray();");
+    }
+
+    private static class NfaState {
+        final List<NfaState> epsilon = new ArrayList<>();
+        // 不为空的时候有一条字符边，走到 next
+        BitSet symbols;
+        NfaState next;
+        // 接受状态对应的规则
+        int rule = -1;
+        // 属于哪一条规则
+        int owner;
+        final int id;
+
+        NfaState(int id) {
+            this.id = id;
+        }
+    }
+
+    private static class Fragment {
+        final NfaState start;
+        final NfaState end;
+
+        Fragment(NfaState start, NfaState end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static class Nfa {
+        final List<NfaState> states = new ArrayList<>();
+        int rule = 0;
+
+        NfaState state() {
+            NfaState state = new NfaState(states.size());
+            state.owner = rule;
+            states.add(state);
+            return state;
+        }
+
+        Fragment symbols(BitSet symbols) {
+            NfaState start = state();
+            NfaState end = state();
+            start.symbols = symbols;
+            start.next = end;
+            return new Fragment(start, end);
+        }
+
+        Fragment empty() {
+            NfaState start = state();
+            NfaState end = state();
+            start.epsilon.add(end);
+            return new Fragment(start, end);
+        }
+
+        Fragment concat(Fragment left, Fragment right) {
+            left.end.epsilon.add(right.start);
+            return new Fragment(left.start, right.end);
+        }
+
+        Fragment alternate(Fragment left, Fragment right) {
+            NfaState start = state();
+            NfaState end = state();
+            start.epsilon.add(left.start);
+            start.epsilon.add(right.start);
+            left.end.epsilon.add(end);
+            right.end.epsilon.add(end);
+            return new Fragment(start, end);
+        }
+
+        Fragment star(Fragment body) {
+            NfaState start = state();
+            NfaState end = state();
+            start.epsilon.add(body.start);
+            start.epsilon.add(end);
+            body.end.epsilon.add(body.start);
+            body.end.epsilon.add(end);
+            return new Fragment(start, end);
+        }
+
+        Fragment optional(Fragment body) {
+            body.start.epsilon.add(body.end);
+            return body;
+        }
+
+        int[] classes() {
+            // 每条字符边都把字符分成在里面和不在里面两部分，
+            // 在所有边上表现都一样的字符属于同一类
+            int[] classOf = new int[SYMBOLS];
+            int count = 1;
+            Set<BitSet> seen = new LinkedHashSet<>();
+            for (NfaState state : states) {
+                if (state.symbols == null || !seen.add(state.symbols)) {
+                    continue;
+                }
+                int[] renumber = new int[count * 2];
+                Arrays.fill(renumber, -1);
+                int next = 0;
+                for (int c = 0; c < SYMBOLS; c++) {
+                    int key = classOf[c] * 2 + (state.symbols.get(c) ? 1 : 0);
+                    if (renumber[key] < 0) {
+                        renumber[key] = next++;
+                    }
+                    classOf[c] = renumber[key];
+                }
+                count = next;
+            }
+            return classOf;
+        }
+    }
+
+    private static class RegexParser {
+        private final Nfa nfa;
+        private final String regex;
+        private int current = 0;
+
+        RegexParser(Nfa nfa, String regex) {
+            this.nfa = nfa;
+            this.regex = regex;
+        }
+
+        Fragment parse() {
+            Fragment fragment = alternation();
+            if (current != regex.length()) {
+                throw error("Unexpected '" + regex.charAt(current) + "'");
+            }
+            return fragment;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + current + " in /" + regex + "/");
+        }
+
+        private boolean isAtEnd() {
+            return current >= regex.length();
+        }
+
+        private char peek() {
+            return regex.charAt(current);
+        }
+
+        private Fragment alternation() {
+            // alternation → concat ( "|" concat )*
+            Fragment fragment = concat();
+            while (!isAtEnd() && peek() == '|') {
+                current++;
+                fragment = nfa.alternate(fragment, concat());
+            }
+            return fragment;
+        }
+
+        private Fragment concat() {
+            // concat → repeat*
+            Fragment fragment = null;
+            while (!isAtEnd() && peek() != '|' && peek() != ')') {
+                Fragment next = repeat();
+                fragment = fragment == null ? next : nfa.concat(fragment, next);
+            }
+            return fragment == null ? nfa.empty() : fragment;
+        }
+
+        private Fragment repeat() {
+            // repeat → atom ( "*" | "+" | "?" )*
+            int from = current;
+            Fragment fragment = atom();
+            while (!isAtEnd()) {
+                char c = peek();
+                if (c == '*') {
+                    fragment = nfa.star(fragment);
+                } else if (c == '+') {
+                    // a+ 就是 a a*，a 要重新解析一遍再建一份
+                    int after = current;
+                    current = from;
+                    Fragment again = atom();
+                    current = after;
+                    fragment = nfa.concat(fragment, nfa.star(again));
+                } else if (c == '?') {
+                    fragment = nfa.optional(fragment);
+                } else {
+                    break;
+                }
+                current++;
+            }
+            return fragment;
+        }
+
+        private Fragment atom() {
+            // atom → "(" alternation ")" | "[" set "]" | "\" char | char
+            char c = regex.charAt(current++);
+            if (c == '(') {
+                Fragment fragment = alternation();
+                if (isAtEnd() || peek() != ')') {
+                    throw error("Expect ')'");
+                }
+                current++;
+                return fragment;
+            }
+            if (c == '[') {
+                return nfa.symbols(set());
+            }
+            BitSet symbols = new BitSet(SYMBOLS);
+            symbols.set(c == '\\' ? escape() : c);
+            return nfa.symbols(symbols);
+        }
+
+        private char escape() {
+            char c = regex.charAt(current++);
+            switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            default:
+                return c;
+            }
+        }
+
+        private BitSet set() {
+            // [abc] [a-z] [^"]，ASCII 以外的字符只能出现在 [^...] 里
+            BitSet symbols = new BitSet(SYMBOLS);
+            boolean negate = !isAtEnd() && peek() == '^';
+            if (negate) {
+                current++;
+            }
+            while (!isAtEnd() && peek() != ']') {
+                char c = regex.charAt(current++);
+                char from = c == '\\' ? escape() : c;
+                char to = from;
+                if (current + 1 < regex.length() && peek() == '-' && regex.charAt(current + 1) != ']') {
+                    current++;
+                    c = regex.charAt(current++);
+                    to = c == '\\' ? escape() : c;
+                }
+                symbols.set(from, to + 1);
+            }
+            if (isAtEnd()) {
+                throw error("Expect ']'");
+            }
+            current++;
+            if (negate) {
+                symbols.flip(0, SYMBOLS);
+            }
+            return symbols;
+        }
+    }
+
+    private static class Dfa {
+        final List<int[]> next = new ArrayList<>();
+        final List<Integer> accept = new ArrayList<>();
+        int[] classOf;
+        int classCount;
+
+        int states() {
+            return next.size();
+        }
+
+        static Dfa build(NfaState start, int[] classOf) {
+            // 子集构造，0 号是空集（死状态），1 号是开始状态
+            Dfa dfa = new Dfa();
+            dfa.classOf = classOf;
+            dfa.classCount = Arrays.stream(classOf).max().getAsInt() + 1;
+            int[] representative = new int[dfa.classCount];
+            for (int c = SYMBOLS - 1; c >= 0; c--) {
+                representative[classOf[c]] = c;
+            }
+
+            Map<BitSet, Integer> ids = new HashMap<>();
+            List<List<NfaState>> subsets = new ArrayList<>();
+            Deque<Integer> worklist = new ArrayDeque<>();
+            dfa.add(ids, subsets, worklist, new ArrayList<>());
+            dfa.add(ids, subsets, worklist, closure(List.of(start)));
+
+            while (!worklist.isEmpty()) {
+                int id = worklist.poll();
+                int[] row = dfa.next.get(id);
+                for (int k = 0; k < dfa.classCount; k++) {
+                    List<NfaState> moved = new ArrayList<>();
+                    for (NfaState state : subsets.get(id)) {
+                        if (state.symbols != null && state.symbols.get(representative[k])) {
+                            moved.add(state.next);
+                        }
+                    }
+                    row[k] = dfa.add(ids, subsets, worklist, closure(moved));
+                }
+            }
+            return dfa;
+        }
+
+        private int add(Map<BitSet, Integer> ids, List<List<NfaState>> subsets, Deque<Integer> worklist,
+                List<NfaState> subset) {
+            BitSet key = new BitSet();
+            int rule = Integer.MAX_VALUE;
+            for (NfaState state : subset) {
+                key.set(state.id);
+                if (state.rule >= 0) {
+                    rule = Math.min(rule, state.rule);
+                }
+            }
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = next.size();
+                ids.put(key, id);
+                subsets.add(subset);
+                next.add(new int[classCount]);
+                // 同时接受几条规则的时候，前面的规则优先
+                accept.add(rule == Integer.MAX_VALUE ? -1 : rule);
+                worklist.add(id);
+            }
+            return id;
+        }
+
+        private static List<NfaState> closure(List<NfaState> states) {
+            Set<NfaState> closure = new LinkedHashSet<>(states);
+            Deque<NfaState> stack = new ArrayDeque<>(states);
+            while (!stack.isEmpty()) {
+                for (NfaState next : stack.pop().epsilon) {
+                    if (closure.add(next)) {
+                        stack.push(next);
+                    }
+                }
+            }
+            return new ArrayList<>(closure);
+        }
+
+        Dfa minimize() {
+            // 先按接受的规则分组，然后只要组里的状态转移到的组不一样就拆开，
+            // 直到不再拆分。按状态顺序编号，死状态所在的组还是 0 号，开始状态所在的组是 1 号
+            int count = states();
+            int[] group = new int[count];
+            Map<Integer, Integer> byRule = new HashMap<>();
+            for (int s = 0; s < count; s++) {
+                group[s] = byRule.computeIfAbsent(accept.get(s), rule -> byRule.size());
+            }
+            int groups = byRule.size();
+            for (;;) {
+                Map<List<Integer>, Integer> split = new HashMap<>();
+                int[] regroup = new int[count];
+                for (int s = 0; s < count; s++) {
+                    List<Integer> key = new ArrayList<>(classCount + 1);
+                    key.add(group[s]);
+                    for (int target : next.get(s)) {
+                        key.add(group[target]);
+                    }
+                    regroup[s] = split.computeIfAbsent(key, k -> split.size());
+                }
+                group = regroup;
+                if (split.size() == groups) {
+                    break;
+                }
+                groups = split.size();
+            }
+
+            Dfa minimal = new Dfa();
+            minimal.classOf = classOf;
+            minimal.classCount = classCount;
+            for (int g = 0; g < groups; g++) {
+                minimal.next.add(null);
+                minimal.accept.add(-1);
+            }
+            for (int s = 0; s < count; s++) {
+                int[] row = new int[classCount];
+                for (int k = 0; k < classCount; k++) {
+                    row[k] = group[next.get(s)[k]];
+                }
+                minimal.next.set(group[s], row);
+                minimal.accept.set(group[s], accept.get(s));
+            }
+            return minimal;
+        }
+
+        int acceptLast() {
+            // 重新编号：死状态 0，开始状态 1，然后是不接受的状态，接受状态排在最后，
+            // 返回第一个接受状态
+            int count = states();
+            int[] renumber = new int[count];
+            int[] order = new int[count];
+            int n = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int s = 0; s < count; s++) {
+                    if ((accept.get(s) >= 0) == (pass == 1)) {
+                        renumber[s] = n;
+                        order[n++] = s;
+                    }
+                }
+            }
+            if (renumber[0] != 0 || renumber[1] != 1) {
+                throw new IllegalStateException("The start state must not accept.");
+            }
+            List<int[]> rows = new ArrayList<>();
+            List<Integer> accepts = new ArrayList<>();
+            int first = count;
+            for (int i = 0; i < count; i++) {
+                int[] row = next.get(order[i]).clone();
+                for (int k = 0; k < classCount; k++) {
+                    row[k] = renumber[row[k]];
+                }
+                rows.add(row);
+                accepts.add(accept.get(order[i]));
+                if (accept.get(order[i]) >= 0) {
+                    first = Math.min(first, i);
+                }
+            }
+            next.clear();
+            next.addAll(rows);
+            accept.clear();
+            accept.addAll(accepts);
+            return first;
+        }
+
+        void mergeColumns() {
+            // 最小化以后有些字符类的转移完全一样了，把它们合成一类
+            Map<List<Integer>, Integer> columns = new HashMap<>();
+            int[] renumber = new int[classCount];
+            for (int k = 0; k < classCount; k++) {
+                List<Integer> column = new ArrayList<>();
+                for (int[] row : next) {
+                    column.add(row[k]);
+                }
+                renumber[k] = columns.computeIfAbsent(column, c -> columns.size());
+            }
+            int merged = columns.size();
+            for (int s = 0; s < states(); s++) {
+                int[] row = new int[merged];
+                for (int k = 0; k < classCount; k++) {
+                    row[renumber[k]] = next.get(s)[k];
+                }
+                next.set(s, row);
+            }
+            int[] classes = new int[SYMBOLS];
+            for (int c = 0; c < SYMBOLS; c++) {
+                classes[c] = renumber[classOf[c]];
+            }
+            classOf = classes;
+            classCount = merged;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * AstCacheTest
+ *
+ * 读回来的树和写进去的一样；截断的、写坏的、别人伪造的 .loxc 都当作没有缓存，不抛异常
+ */
+class AstCacheTest {
+    private static final byte[] SOURCE = ("var a = 1.5;\n"
+            + "fun add(x, y) { return x + y; }\n"
+            + "if (a > 1 and !false) print add(a, 2); else print \"no\";\n"
+            + "while (a < 10) { a = a + 1; }\n"
+            + "print -a * (3 - nil);\n").getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path work;
+
+    private static List<Stmt> parse(byte[] source) {
+        return new Parser(new Scanner(new String(source, StandardCharsets.UTF_8)).tokens()).parse();
+    }
+
+    private static byte[] tree(List<Stmt> statements) {
+        AstWriter writer = new AstWriter();
+        writer.statements(statements);
+        return writer.body.toByteArray();
+    }
+
+    private Path stored() throws IOException {
+        Path cache = work.resolve("program.loxc");
+        AstCache.store(cache, SOURCE, parse(SOURCE));
+        return cache;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        List<Stmt> loaded = AstCache.load(stored(), SOURCE);
+        assertNotNull(loaded);
+        assertArrayEquals(tree(parse(SOURCE)), tree(loaded));
+        assertNull(AstCache.load(work.resolve("missing.loxc"), SOURCE));
+    }
+
+    @Test
+    void truncatedFiles() throws IOException {
+        byte[] bytes = Files.readAllBytes(stored());
+        Path cache = work.resolve("truncated.loxc");
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(cache, Arrays.copyOf(bytes, length));
+            assertNull(AstCache.load(cache, SOURCE), "length " + length);
+        }
+    }
+
+    @Test
+    void corruptedBytes() throws IOException {
+        // 哈希后面的每个字节换成几个不同的值，读出什么都行，就是不能抛异常
+        byte[] bytes = Files.readAllBytes(stored());
+        Path cache = work.resolve("corrupted.loxc");
+        int[] values = { 0x00, 0x7F, 0x80, 0xFF, 0x17 };
+        for (int i = 40; i < bytes.length; i++) {
+            for (int value : values) {
+                byte[] corrupted = bytes.clone();
+                corrupted[i] = (byte) value;
+                Files.write(cache, corrupted);
+                AstCache.load(cache, SOURCE);
+            }
+        }
+    }
+
+    @Test
+    void hugeCounts() throws IOException {
+        // 个数是 int 的最大值，后面什么都没有：不能先按这个个数分配
+        ByteArrayOutputStream pool = header();
+        AstCache.writeInt(pool, Integer.MAX_VALUE);
+        assertNull(load(pool));
+
+        ByteArrayOutputStream statements = header();
+        AstCache.writeInt(statements, 0);
+        AstCache.writeInt(statements, Integer.MAX_VALUE - 1);
+        assertNull(load(statements));
+
+        // 超过 5 个字节的变长整数
+        ByteArrayOutputStream varint = header();
+        varint.write(new byte[] { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01 });
+        assertNull(load(varint));
+    }
+
+    @Test
+    void deepNesting() throws IOException {
+        // 一百万层括号，递归读下去会栈溢出
+        ByteArrayOutputStream deep = header();
+        AstCache.writeInt(deep, 0);
+        AstCache.writeInt(deep, 1);
+        deep.write(AstCache.EXPRESSION);
+        for (int i = 0; i < 1_000_000; i++) {
+            deep.write(AstCache.GROUPING);
+        }
+        deep.write(AstCache.NIL);
+        assertNull(load(deep));
+    }
+
+    private static ByteArrayOutputStream header() throws IOException {
+        // 和 AstCache.store 写的开头一样，哈希对得上，后面由测试自己写
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ByteBuffer.allocate(8).putInt(AstCache.MAGIC).putInt(AstCache.VERSION).array());
+        try {
+            out.write(MessageDigest.getInstance("SHA-256").digest(SOURCE));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
+    private List<Stmt> load(ByteArrayOutputStream bytes) throws IOException {
+        Path cache = work.resolve("forged.loxc");
+        Files.write(cache, bytes.toByteArray());
+        return AstCache.load(cache, SOURCE);
+    }
+}
@@ -0,0 +1,112 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * CompiledScriptTest
+ *
+ * 嵌入的入口：MyLox.compile 以后 eval，值和 bindings 在宿主和脚本之间来回
+ */
+class CompiledScriptTest {
+    @Test
+    void lastExpressionIsTheResult() {
+        // Optimizer 折叠成字面量的最后一条表达式语句也要留下
+        assertEquals(3.0, MyLox.compile("1 + 2;").eval());
+        assertEquals("abc", MyLox.compile("\"abc\";").eval());
+        assertEquals(true, MyLox.compile("1 < 2;").eval());
+        assertEquals(6.0, MyLox.compile("var x = 2; x * 3;").eval());
+        assertEquals(6.0, MyLox.compile("fun f(n) { return n * 2; } f(3);").eval());
+        assertNull(MyLox.compile("1 + 2; print 3;").eval(new HashMap<>(), discard()));
+        assertNull(MyLox.compile("").eval());
+    }
+
+    @Test
+    void bindingsRoundTrip() {
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("n", 3);
+        bindings.put("name", "lox");
+        Object result = MyLox.compile("n = n + 1; var greeting = \"hi \" + name; n;").eval(bindings);
+        assertEquals(4.0, result);
+        assertEquals(4.0, bindings.get("n"));
+        assertEquals("lox", bindings.get("name"));
+        assertEquals(3, bindings.size());
+
+        // 同一个脚本换着 bindings 执行
+        CompiledScript script = MyLox.compile("x * 2;");
+        assertEquals(4.0, script.eval(new HashMap<>(Map.of("x", 2))));
+        assertEquals(10.0, script.eval(new HashMap<>(Map.of("x", 5))));
+    }
+
+    @Test
+    void stringsKeepTheirInnerQuotes() {
+        // 只有两头的引号是 Lox 字符串的一部分，宿主的字符串来回一趟不变
+        assertEquals("a\"\"b", MyLox.compile("\"a\" + \"b\";").eval());
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("quoted", "say \"hi\"");
+        bindings.put("empty", "");
+        bindings.put("mark", '"');
+        MyLox.compile("var same = quoted; var two = empty + empty;").eval(bindings);
+        assertEquals("say \"hi\"", bindings.get("quoted"));
+        assertEquals("say \"hi\"", bindings.get("same"));
+        assertEquals("", bindings.get("empty"));
+        assertEquals("\"\"", bindings.get("two"));
+        assertEquals("\"", bindings.get("mark"));
+    }
+
+    @Test
+    void hoistedTemporariesStayInTheScript() {
+        // 顶层循环条件里不变的 n + 1 被提到循环前面，存它的变量不能写回 bindings
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("n", 3);
+        MyLox.compile("var k = 0; while (n + 1 > k) k = k + 1;").eval(bindings);
+        assertEquals(Map.of("n", 3.0, "k", 4.0), bindings);
+    }
+
+    @Test
+    void functionsStayInTheScript() {
+        // 脚本里声明的函数不写回 bindings，同一个 bindings 再执行一次也看不到上次的函数
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("n", 2);
+        MyLox.compile("fun twice(x) { return x * 2; } var m = twice(n); var none = nil;").eval(bindings);
+        assertEquals(4.0, bindings.get("m"));
+        // nil 也写回，值是 null
+        assertEquals(Set.of("n", "m", "none"), bindings.keySet());
+        assertNull(bindings.get("none"));
+
+        ScriptError error = assertThrows(ScriptError.class, () -> MyLox.compile("twice(1);").eval(bindings));
+        assertEquals("Undefined variable 'twice'.", error.getMessage());
+    }
+
+    @Test
+    void printGoesToTheGivenStream() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MyLox.compile("print 1 + 1; print \"a\";").eval(new HashMap<>(), new PrintStream(bytes, true));
+        assertEquals("2\n\"a\"\n", bytes.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    void errors() {
+        ScriptError compile = assertThrows(ScriptError.class, () -> MyLox.compile("print 1 +;"));
+        assertEquals(0, compile.line());
+        assertEquals("[line 1] Error at ';' : Expect expression.", compile.getMessage());
+
+        ScriptError runtime = assertThrows(ScriptError.class, () -> MyLox.compile("var a = 1;\na / 0;").eval());
+        assertEquals(2, runtime.line());
+        assertEquals("divide zero", runtime.getMessage());
+    }
+
+    private static PrintStream discard() {
+        return new PrintStream(PrintStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,120 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.DynamicContainer;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * CorpusTest
+ *
+ * test/lox 下的每个程序在每种执行方式下都跑一遍，和程序里的注释比对 stdout、stderr 和退出码：
+ *   // expect: 值            print 打印的一行
+ *   // error: 信息           编译错误，stderr 上原样的一行，退出码 65
+ *   // runtime error: 信息   运行时错误，后面一行是注释所在的行号，退出码 70
+ *   // skip: -vm 原因       这种执行方式不跑，比如要的内存太多
+ * 各种执行方式的结果必须完全一样。
+ */
+class CorpusTest {
+    private static final Path CORPUS = Paths.get("test", "lox");
+    // -cache 连着跑两次，第二次读的是第一次写下的 .loxc
+    private static final String[] ENGINES = { "", "-O", "-dfa", "-cache", "-vm", "-jit", "-nodes" };
+    private static final Pattern EXPECT = Pattern.compile("// (expect|error|runtime error|skip): ?(.*)$");
+
+    @TempDir
+    static Path work;
+
+    /**
+     * Expectation
+     *
+     * 从注释里读出来的预期结果
+     */
+    static final class Expectation {
+        final List<String> stdout = new ArrayList<>();
+        final List<String> stderr = new ArrayList<>();
+        final List<String> skip = new ArrayList<>();
+        int exit = 0;
+
+        Expectation(List<String> lines) {
+            for (int i = 0; i < lines.size(); i++) {
+                Matcher matcher = EXPECT.matcher(lines.get(i));
+                if (!matcher.find()) {
+                    continue;
+                }
+                String text = matcher.group(2);
+                switch (matcher.group(1)) {
+                case "expect":
+                    stdout.add(text);
+                    break;
+                case "error":
+                    stderr.add(text);
+                    exit = 65;
+                    break;
+                case "skip":
+                    skip.add(text.split(" ")[0]);
+                    break;
+                default:
+                    stderr.add(text);
+                    stderr.add("[line " + (i + 1) + "]");
+                    exit = 70;
+                    break;
+                }
+            }
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicContainer> corpus() throws IOException {
+        List<Path> programs;
+        try (Stream<Path> files = Files.list(CORPUS)) {
+            programs = files.filter(file -> file.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+        }
+        return programs.stream().map(program -> DynamicContainer.dynamicContainer(program.getFileName().toString(),
+                Stream.of(ENGINES).map(engine -> DynamicTest.dynamicTest(engine.isEmpty() ? "ast" : engine,
+                        () -> check(program, engine)))));
+    }
+
+    private static void check(Path program, String engine) throws Exception {
+        // 每种执行方式一个目录，-cache 写下的 .loxc 不会被别的执行方式读到
+        Path directory = work.resolve(engine.isEmpty() ? "ast" : engine.substring(1));
+        Files.createDirectories(directory);
+        String name = program.getFileName().toString();
+        Files.copy(program, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        Expectation expected = new Expectation(Files.readAllLines(program, StandardCharsets.UTF_8));
+        Assumptions.assumeFalse(expected.skip.contains(engine), "skipped");
+
+        int runs = engine.equals("-cache") ? 2 : 1;
+        for (int run = 0; run < runs; run++) {
+            LoxProcess result = engine.isEmpty()
+                    ? LoxProcess.run(directory, name)
+                    : LoxProcess.run(directory, engine, name);
+            assertEquals(lines(expected.stdout), result.stdout, "stdout");
+            assertEquals(lines(expected.stderr), result.stderr, "stderr");
+            assertEquals(expected.exit, result.exit, "exit code");
+        }
+    }
+
+    private static String lines(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+}
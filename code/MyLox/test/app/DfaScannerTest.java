@@ -0,0 +1,111 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DfaScannerTest
+ *
+ * 表驱动的 DfaScanner 和手写的 Scanner 扫描同样的源码，token 和报的错误都要一样
+ */
+class DfaScannerTest {
+    private static String scan(Lexer lexer) {
+        // 每个 token 一行：类型、lexeme、行号；后面接着报的错误。
+        // 和 Parser 一样用完就 release，Lexer 才会挪动、丢掉 buffer 里的字符
+        ErrorReporter errors = new ErrorReporter(null);
+        lexer.errors = errors;
+        TokenBuffer tokens = lexer.tokens();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0;; i++) {
+            TokenType type = tokens.type(i);
+            text.append(type).append(' ').append(tokens.lexeme(i)).append(' ').append(tokens.line(i)).append('\n');
+            tokens.release(i + 1);
+            if (type == TokenType.EOF) {
+                break;
+            }
+        }
+        for (String message : errors.messages()) {
+            text.append(message).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void same(String source) {
+        String expected = scan(new Scanner(source));
+        assertEquals(expected, scan(new DfaScanner(source)), source);
+        // 从 Reader 一次只读到一个字符，每个 token 都要跨过 fill
+        assertEquals(expected, scan(new Scanner(new Trickle(source))), source);
+        assertEquals(expected, scan(new DfaScanner(new Trickle(source))), source);
+    }
+
+    /**
+     * Trickle
+     *
+     * 每次 read 只给一个字符
+     */
+    private static final class Trickle extends Reader {
+        private final Reader source;
+
+        Trickle(String source) {
+            this.source = new StringReader(source);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) throws IOException {
+            return source.read(buffer, offset, Math.min(count, 1));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void unexpectedCharacters() {
+        // 开始状态没有转移的字符报错以后跳过，不能当成源码结束
+        same("var x = @;\nprint 2;");
+        same("print 2 # 3;");
+        same("print \"前\";\nprint 中文;\nprint 3;");
+        same("@");
+        same("a@b");
+    }
+
+    @Test
+    void tokens() {
+        same("");
+        same("// comment only");
+        same("fun f(a, b) { return a >= b and !(a == b) or a != nil; }");
+        same("var s = \"multi\nline\"; print s;");
+        same("\"unterminated");
+        same("1 + 2.5 * 30 / 4 - -1");
+        same("while (true) { if (false) print 1; else print 2; }");
+        same("for(var i=0;i<10;i=i+1){print i;}");
+        // 最后一个 token 后面没有换行
+        same("print 1;");
+        same("print 1");
+        same("print \"a\" + b // comment");
+    }
+
+    @Test
+    void corpus() throws IOException {
+        List<Path> programs;
+        try (Stream<Path> files = Files.list(Paths.get("test", "lox"))) {
+            programs = files.filter(file -> file.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+        }
+        for (Path program : programs) {
+            same(new String(Files.readAllBytes(program), StandardCharsets.UTF_8));
+        }
+    }
+}
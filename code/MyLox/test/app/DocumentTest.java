@@ -0,0 +1,136 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DocumentTest
+ *
+ * 每改一次，Document 的文本、语法树和错误都要和把整个文本重新解析一遍一样
+ */
+class DocumentTest {
+    private static final String SOURCE = "var a = 1;\n"
+            + "fun add(x, y) {\n  return x + y;\n}\n"
+            + "// comment\n"
+            + "if (a > 0) print \"positive\"; else print \"other\";\n"
+            + "while (a < 10) {\n  a = add(a, 1);\n}\n"
+            + "var s = \"two\nlines\";\n"
+            + "print add(a, 2) * 3;\n";
+    // 随机插进去的片段，有的会弄出语法错误、词法错误或者把后面整个吞掉
+    private static final String[] FRAGMENTS = { "", "\n", ";", "}", "{", "(", "print 1;", "var x = ", "fun f() {",
+            "if (a) ", "else ", "return;", "\"", "@", "// c\n", "/", "a + b", "nil", "12.5", "and" };
+
+    /**
+     * Parse
+     *
+     * 整个文本重新扫描、解析一遍的结果
+     */
+    private static final class Parse {
+        final List<Stmt> statements;
+        final List<String> errors;
+
+        Parse(String text) {
+            ErrorReporter errors = new ErrorReporter(null);
+            Lexer lexer = new Scanner(text);
+            lexer.errors = errors;
+            this.statements = new Parser(lexer.tokens()).parse();
+            this.errors = errors.messages();
+        }
+    }
+
+    private static void same(String text, Document document, List<String> diagnostics) {
+        Parse parse = new Parse(text);
+        assertEquals(text, document.text());
+        assertEquals(text.length(), document.length());
+        // 解析一个声明时多看的 token 报的错误记在下一段上，顺序可能和一遍解析的不一样
+        assertEquals(sorted(parse.errors), sorted(diagnostics), text);
+        assertEquals(diagnostics, document.diagnostics(), text);
+        assertEquals(!parse.errors.isEmpty(), document.hadError(), text);
+        // 语法树按 .loxc 的格式写出来比较，行号也在里面
+        assertArrayEquals(tree(parse.statements), tree(document.statements()), text);
+    }
+
+    private static List<String> sorted(List<String> messages) {
+        List<String> sorted = new ArrayList<>(messages);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static byte[] tree(List<Stmt> statements) {
+        AstWriter writer = new AstWriter();
+        writer.statements(statements);
+        byte[] body = writer.body.toByteArray();
+        byte[] strings = String.join("\0", writer.strings.keySet()).getBytes();
+        byte[] tree = new byte[body.length + 1 + strings.length];
+        System.arraycopy(body, 0, tree, 0, body.length);
+        System.arraycopy(strings, 0, tree, body.length + 1, strings.length);
+        return tree;
+    }
+
+    @Test
+    void randomEdits() {
+        Random random = new Random(20261018);
+        for (int round = 0; round < 20; round++) {
+            StringBuilder text = new StringBuilder(SOURCE);
+            Document document = new Document(SOURCE);
+            same(SOURCE, document, document.diagnostics());
+            for (int i = 0; i < 50; i++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(Math.min(8, text.length() - offset) + 1);
+                String inserted = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+                text.replace(offset, offset + removed, inserted);
+                List<String> diagnostics = document.edit(offset, removed, inserted);
+                same(text.toString(), document, diagnostics);
+            }
+        }
+    }
+
+    @Test
+    void manySegments() {
+        // 超过一块的段数，挪行号要跨块
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            text.append("var v").append(i).append(" = ").append(i).append(";\n");
+        }
+        Document document = new Document(text.toString());
+        int[] offsets = { 0, text.length() / 2, text.length() - 1, 17 };
+        for (int offset : offsets) {
+            text.insert(offset, "\n\n@");
+            same(text.toString(), document, document.edit(offset, 0, "\n\n@"));
+        }
+    }
+
+    @Test
+    void errorsGoToTheGivenReporter() {
+        // 带文件名的 ErrorReporter，每次改完收到当时所有的错误；MyLox 的静态状态不受影响
+        List<String> reported = new ArrayList<>();
+        ErrorReporter errors = new ErrorReporter("edit.lox") {
+            @Override
+            void report(String file, int line, String where, String message) {
+                reported.add(ErrorReporter.format(file, line, where, message));
+            }
+        };
+        Document document = new Document("print 1;\nprint 2;\n", errors);
+        assertTrue(reported.isEmpty());
+
+        List<String> diagnostics = document.edit(0, 0, "\n(");
+        List<String> expected = List.of("edit.lox: [line 2] Error at 'print' : Expect expression.");
+        assertEquals(expected, diagnostics);
+        assertEquals(expected, reported);
+
+        reported.clear();
+        assertEquals(List.of(), document.edit(0, 2, ""));
+        assertTrue(reported.isEmpty());
+        assertFalse(document.hadError());
+        assertFalse(MyLox.hadError);
+    }
+}
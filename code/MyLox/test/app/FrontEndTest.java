@@ -0,0 +1,71 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * FrontEndTest
+ *
+ * 多个文件连成一个程序以后，编译错误、Resolver 的错误和运行时错误都带上出错的文件名，
+ * 读不了的文件和语法错误一样报告
+ */
+class FrontEndTest {
+    // 除了 -profile，所有执行方式的结果都一样
+    private static final String[] ENGINES = { "", "-O", "-dfa", "-vm", "-jit", "-nodes" };
+
+    @TempDir
+    static Path work;
+
+    @BeforeAll
+    static void sources() throws IOException {
+        write("a.lox", "fun half(x) {\n  return x / nil;\n}\n");
+        write("b.lox", "print 1;\nprint half(2);\n");
+        write("c.lox", "print 2;\n\nreturn 1;\n");
+        write("d.lox", "print (;\n");
+    }
+
+    private static void write(String name, String source) throws IOException {
+        Files.write(work.resolve(name), source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void check(String stdout, String stderr, int exit, String... files) throws Exception {
+        for (String engine : ENGINES) {
+            String[] args = files;
+            if (!engine.isEmpty()) {
+                args = new String[files.length + 1];
+                args[0] = engine;
+                System.arraycopy(files, 0, args, 1, files.length);
+            }
+            LoxProcess result = LoxProcess.run(work, args);
+            assertEquals(stdout, result.stdout, engine + " stdout");
+            assertEquals(stderr, result.stderr, engine + " stderr");
+            assertEquals(exit, result.exit, engine + " exit code");
+        }
+    }
+
+    @Test
+    void runtimeErrorNamesTheFile() throws Exception {
+        // half 定义在 a.lox，在 b.lox 里调用，出错的是 a.lox 的第 2 行
+        check("1\n", "Operands must be numbers.\na.lox: [line 2]\n", 70, "a.lox", "b.lox");
+    }
+
+    @Test
+    void resolverErrorNamesTheFile() throws Exception {
+        check("", "c.lox: [line 3] Error at 'return' : Cannot return from top-level code.\n", 65, "a.lox", "c.lox");
+    }
+
+    @Test
+    void missingFileIsReportedInOrder() throws Exception {
+        check("", "d.lox: [line 1] Error at ';' : Expect expression.\n"
+                + "missing.lox: [line 0] Error: Cannot read file (NoSuchFileException).\n", 65,
+                "a.lox", "d.lox", "missing.lox");
+    }
+}
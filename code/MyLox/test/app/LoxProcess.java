@@ -0,0 +1,51 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LoxProcess
+ *
+ * 在新的 JVM 里跑一次命令行的 MyLox。main 里的静态状态和 System.exit 都和真正的命令行一样，
+ * 测试之间互不影响。stdout、stderr 先写到工作目录里的文件，跑完再读回来。
+ */
+final class LoxProcess {
+    final String stdout;
+    final String stderr;
+    final int exit;
+
+    private LoxProcess(String stdout, String stderr, int exit) {
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.exit = exit;
+    }
+
+    static LoxProcess run(Path directory, String... args) throws IOException, InterruptedException {
+        // 源码和输出都按 UTF-8，不受机器默认字符集影响
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Dfile.encoding=UTF-8", "-Dsun.stdout.encoding=UTF-8", "-Dsun.stderr.encoding=UTF-8",
+                "-cp", System.getProperty("java.class.path"), "app.MyLox"));
+        command.addAll(Arrays.asList(args));
+        File out = directory.resolve(".stdout").toFile();
+        File err = directory.resolve(".stderr").toFile();
+        Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectOutput(out)
+                .redirectError(err)
+                .start();
+        int exit = process.waitFor();
+        return new LoxProcess(read(out), read(err), exit);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+}
@@ -0,0 +1,48 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * LoxStringTest
+ *
+ * 拼出来的 LoxString 和内容相同的 String 在 Lox 里相等，两个方向一样；equals 只认 LoxString，保持对称
+ */
+class LoxStringTest {
+    private static final String LEFT = "\"prefix-long-enough-to-build-a-node\"";
+    private static final String RIGHT = "\"and-a-tail\"";
+    private static final String FLAT = LEFT + RIGHT;
+
+    private static CharSequence rope() {
+        CharSequence rope = LoxString.concat(LEFT, RIGHT, null);
+        assertTrue(rope instanceof LoxString);
+        return rope;
+    }
+
+    @Test
+    void equalsIsSymmetric() {
+        CharSequence rope = rope();
+        assertEquals(FLAT.equals(rope), rope.equals(FLAT));
+        assertFalse(rope.equals(FLAT));
+        assertEquals(rope(), rope);
+        assertEquals(rope().hashCode(), rope.hashCode());
+    }
+
+    @Test
+    void loxEqualityComparesText() {
+        CharSequence rope = rope();
+        assertTrue(LoxString.isEqual(rope, FLAT));
+        assertTrue(LoxString.isEqual(FLAT, rope));
+        assertTrue(LoxString.isEqual(rope, rope()));
+        assertFalse(LoxString.isEqual(rope, LEFT));
+        assertFalse(LoxString.isEqual(LEFT, rope));
+        assertFalse(LoxString.isEqual(rope, null));
+        assertFalse(LoxString.isEqual(null, rope));
+        assertFalse(LoxString.isEqual(rope, new StringBuilder(FLAT)));
+        assertTrue(LoxString.isEqual(null, null));
+        assertTrue(LoxString.isEqual(1.0, 1.0));
+    }
+}
@@ -0,0 +1,77 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ProfilerTest
+ *
+ * -profile 的报告：时间每次都不一样，只比较每一行的名字和次数
+ */
+class ProfilerTest {
+    private static final String A = "fun g(x) {\n  return x;\n}\ng(1);\n";
+    private static final String B = "var s = 0;\ng(2);\n"
+            + "for (var i = 0; i < 3; i = i + 1)\n"
+            + "  s = s +\n"
+            + "    i * 2;\n";
+
+    @TempDir
+    Path work;
+
+    private static Map<String, Long> profile(List<Stmt> statements) {
+        // 名字到次数；表头的 calls 列不是数字，跳过
+        new Resolver().resolve(statements);
+        Profiler profiler = new Profiler(new PrintStream(new ByteArrayOutputStream()));
+        profiler.interpret(statements);
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        profiler.report(new PrintStream(report, true, StandardCharsets.UTF_8));
+        Map<String, Long> calls = new HashMap<>();
+        for (String row : report.toString(StandardCharsets.UTF_8).split("\\R")) {
+            String[] columns = row.trim().split(" {2,}");
+            if (columns.length == 4 && !columns[1].equals("calls")) {
+                calls.put(columns[0], Long.parseLong(columns[1]));
+            }
+        }
+        return calls;
+    }
+
+    @Test
+    void singleFile() {
+        Map<String, Long> calls = profile(new Parser(new Scanner(A + B).tokens()).parse());
+        assertEquals(2L, calls.get("g (line 1)"));
+        assertEquals(2L, calls.get("line 2"));
+        assertEquals(1L, calls.get("line 4"));
+        // 跨行的 s + i * 2：第 9 行的 * 走数值通道，也要算在第 9 行
+        assertEquals(3L, calls.get("line 8"));
+        assertEquals(3L, calls.get("line 9"));
+    }
+
+    @Test
+    void linesOfDifferentFilesStaySeparate() throws IOException {
+        Files.write(work.resolve("a.lox"), A.getBytes(StandardCharsets.UTF_8));
+        Files.write(work.resolve("b.lox"), B.getBytes(StandardCharsets.UTF_8));
+        String a = work.resolve("a.lox").toString();
+        String b = work.resolve("b.lox").toString();
+        Map<String, Long> calls = profile(new FrontEnd(false).parse(List.of(work.resolve("a.lox"),
+                work.resolve("b.lox"))));
+        assertEquals(2L, calls.get("g (" + a + ":1)"));
+        // a.lox 的第 2 行是 g 里的 return，b.lox 的第 2 行是 g(2)
+        assertEquals(2L, calls.get(a + ":2"));
+        assertEquals(1L, calls.get(b + ":2"));
+        assertEquals(3L, calls.get(b + ":5"));
+        assertFalse(calls.containsKey("line 2"));
+    }
+}
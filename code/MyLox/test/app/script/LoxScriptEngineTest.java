@@ -0,0 +1,106 @@
+package app.script;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * LoxScriptEngineTest
+ *
+ * 通过 ScriptEngineManager 找到引擎，eval 的值、变量和输出经过 ScriptContext 来回
+ */
+class LoxScriptEngineTest {
+    private static ScriptEngine engine() {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+        assertNotNull(engine);
+        return engine;
+    }
+
+    @Test
+    void evalReturnsTheLastExpression() throws ScriptException {
+        ScriptEngine engine = engine();
+        assertEquals(6.0, engine.eval("2 * 3;"));
+        assertEquals("abc", engine.eval("\"abc\";"));
+    }
+
+    @Test
+    void variablesRoundTrip() throws ScriptException {
+        ScriptEngine engine = engine();
+        engine.put("n", 3);
+        assertEquals(4.0, engine.eval("n = n + 1; n;"));
+        assertEquals(4.0, engine.get("n"));
+        engine.eval("var total = n * 10;");
+        assertEquals(40.0, engine.get("total"));
+
+        // 字符串里的引号来回一趟不变
+        engine.put("quoted", "say \"hi\"");
+        engine.eval("var copy = quoted;");
+        assertEquals("say \"hi\"", engine.get("copy"));
+
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        // 内置函数不写回
+        assertFalse(bindings.containsKey("clock"));
+    }
+
+    @Test
+    void unchangedGlobalScopeValuesStayThere() throws ScriptException {
+        // 全局作用域的 Integer、StringBuilder 进出一趟换成了 Double、String，没有赋值就不算改过
+        ScriptEngine engine = engine();
+        Bindings global = new SimpleBindings();
+        global.put("limit", 3);
+        global.put("label", new StringBuilder("lox"));
+        engine.setBindings(global, ScriptContext.GLOBAL_SCOPE);
+        assertEquals(4.0, engine.eval("var next = limit + 1; next;"));
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        assertEquals(4.0, bindings.get("next"));
+        assertFalse(bindings.containsKey("limit"));
+        assertFalse(bindings.containsKey("label"));
+
+        // 赋过值的写进引擎作用域，遮住全局的
+        engine.eval("limit = 5;");
+        assertEquals(5.0, bindings.get("limit"));
+        assertEquals(3, global.get("limit"));
+    }
+
+    @Test
+    void compiledScriptRunsWithEachContext() throws ScriptException {
+        ScriptEngine engine = engine();
+        CompiledScript script = ((Compilable) engine).compile("x + 1;");
+        engine.put("x", 1);
+        assertEquals(2.0, script.eval());
+        Bindings other = engine.createBindings();
+        other.put("x", 10);
+        assertEquals(11.0, script.eval(other));
+    }
+
+    @Test
+    void printGoesToTheContextWriter() throws ScriptException {
+        ScriptEngine engine = engine();
+        StringWriter out = new StringWriter();
+        engine.getContext().setWriter(out);
+        engine.eval("print 1; print \"two\";");
+        assertEquals("1" + System.lineSeparator() + "\"two\"" + System.lineSeparator(), out.toString());
+    }
+
+    @Test
+    void errorsBecomeScriptExceptions() {
+        ScriptEngine engine = engine();
+        assertThrows(ScriptException.class, () -> engine.eval("print 1 +;"));
+        ScriptException runtime = assertThrows(ScriptException.class, () -> engine.eval("nil + 1;"));
+        assertEquals(1, runtime.getLineNumber());
+    }
+}